@@ -231,6 +231,25 @@ public class Config {
 
 		@Comment("How many MB of memory to reserve for stock loading per thread, higher numbers = safer but slower")
 		public static int megabytesReservedPerStockLoadingThread = 1024;
+
+		@Comment("Spread the forces of independent consists on multiple threads.  Track and block lookups stay on the server thread.")
+		public static boolean multithreadedPhysics = false;
+
+		@Comment("Number of threads to use for multithreaded physics, 0 = one less than the number of processors")
+		@Range(min = 0, max = 64)
+		public static int physicsThreads = 0;
+
+		@Comment("Max number of periodic stock/track housekeeping tasks to run per tick per world, extra tasks are pushed back to the next tick. 0 = unlimited")
+		@Range(min = 0, max = 100000)
+		public static int housekeepingBudget = 0;
+
+		@Comment("How many seconds of travel ahead of moving trains to keep chunks loaded for, costs memory and tick time on busy servers. 0 = disabled")
+		@Range(min = 0, max = 60)
+		public static int chunkPreloadSeconds = 0;
+
+		@Comment("Max number of chunks to load ahead of moving trains per physics pass per world")
+		@Range(min = 0, max = 64)
+		public static int chunkPreloadPerPass = 2;
 	}
 
 	@Name("debug")
@@ -51,6 +51,9 @@ public class ConfigGraphics {
 	@Range(min = 0, max = 500)
 	public static double StockLODDistance = 64;
 
+	@Comment("Periodically log how many stock are rendered at each LOD")
+	public static boolean StockLODDebug = false;
+
 	@Comment("0.0 is no sway, 1.0 is default sway")
 	@Range(min = 0, max = 1)
 	public static double StockSwayMultiplier = 1;
@@ -1,6 +1,8 @@
 package cam72cam.immersiverailroading;
 
 import cam72cam.immersiverailroading.entity.EntityRollingStock;
+import cam72cam.immersiverailroading.entity.physics.PhysicsProfiler;
+import cam72cam.immersiverailroading.entity.physics.SimulationBenchmark;
 import cam72cam.immersiverailroading.registry.DefinitionManager;
 import cam72cam.mod.entity.Player;
 import cam72cam.mod.text.Command;
@@ -22,7 +24,7 @@ public class IRCommand extends Command {
 
 	@Override
 	public String getUsage() {
-		return "Usage: " + ImmersiveRailroading.MODID + " (reload|debug)";
+		return "Usage: " + ImmersiveRailroading.MODID + " (reload|debug|benchmark [passes]|profile [start [passes]|stop|dump])";
 	}
 
 	@Override
@@ -32,6 +34,33 @@ public class IRCommand extends Command {
 
 	@Override
 	public boolean execute(Consumer<PlayerMessage> sender, Optional<Player> player, String[] args) {
+		if (args.length == 0) {
+			return false;
+		}
+		if (args[0].equals("benchmark") && args.length <= 2) {
+			if (!player.isPresent()) {
+				sender.accept(PlayerMessage.direct("This command is not supported for non-players (yet)"));
+				return true;
+			}
+			int passes = 100;
+			if (args.length == 2) {
+				try {
+					passes = Integer.parseInt(args[1]);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				if (passes < 1 || passes > SimulationBenchmark.maxPasses) {
+					return false;
+				}
+			}
+			for (String line : SimulationBenchmark.run(player.get().getWorld(), passes)) {
+				sender.accept(PlayerMessage.direct(line));
+			}
+			return true;
+		}
+		if (args[0].equals("profile") && args.length <= 3) {
+			return profile(sender, player, args);
+		}
 		if (args.length != 1) {
 			return false;
 		}
@@ -56,4 +85,57 @@ public class IRCommand extends Command {
 		}
 		return false;
 	}
+
+	private boolean profile(Consumer<PlayerMessage> sender, Optional<Player> player, String[] args) {
+		if (args.length >= 2 && args[1].equals("start")) {
+			int passes = 100;
+			if (args.length == 3) {
+				try {
+					passes = Integer.parseInt(args[2]);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				if (passes < 1 || passes > PhysicsProfiler.maxWindowPasses) {
+					return false;
+				}
+			}
+			PhysicsProfiler.enable(passes);
+			sender.accept(PlayerMessage.direct(String.format("Profiling physics over the last %s passes", passes)));
+			return true;
+		}
+		if (args.length == 2 && args[1].equals("stop")) {
+			PhysicsProfiler.disable();
+			sender.accept(PlayerMessage.direct("Stopped profiling physics"));
+			return true;
+		}
+		if (args.length > 2) {
+			return false;
+		}
+
+		if (!PhysicsProfiler.isEnabled()) {
+			sender.accept(PlayerMessage.direct("Physics profiling is not running, use profile start"));
+			return true;
+		}
+		if (!player.isPresent()) {
+			sender.accept(PlayerMessage.direct("This command is not supported for non-players (yet)"));
+			return true;
+		}
+		PhysicsProfiler profiler = PhysicsProfiler.get(player.get().getWorld());
+		if (args.length == 2) {
+			if (!args[1].equals("dump")) {
+				return false;
+			}
+			try {
+				sender.accept(PlayerMessage.direct("Wrote " + profiler.dump().getPath()));
+			} catch (IOException e) {
+				ImmersiveRailroading.catching(e);
+				sender.accept(PlayerMessage.direct("Unable to write physics profile: " + e.getMessage()));
+			}
+			return true;
+		}
+		for (String line : profiler.report(10)) {
+			sender.accept(PlayerMessage.direct(line));
+		}
+		return true;
+	}
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import java.util.function.Function;
 import cam72cam.immersiverailroading.entity.physics.Consist;
 import cam72cam.immersiverailroading.entity.physics.Simulation;
 import cam72cam.immersiverailroading.entity.physics.SimulationState;
+import cam72cam.immersiverailroading.entity.physics.StockIndex;
 import cam72cam.immersiverailroading.library.ModelComponentType;
 import cam72cam.immersiverailroading.library.ModelComponentType.ModelPosition;
 import cam72cam.immersiverailroading.library.Permissions;
@@ -26,6 +27,8 @@ import cam72cam.immersiverailroading.Config.ConfigDebug;
 import cam72cam.immersiverailroading.IRItems;
 import cam72cam.immersiverailroading.library.ChatText;
 import cam72cam.immersiverailroading.util.VecUtil;
+import cam72cam.immersiverailroading.util.Housekeeping;
+import cam72cam.immersiverailroading.util.Housekeeping.Task;
 
 public abstract class EntityCoupleableRollingStock extends EntityMoveableRollingStock {
 
@@ -102,6 +105,8 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 	private boolean hasElectricalPower;
 	private boolean hadElectricalPower = false;
 	private int gotElectricalPowerTick = -1;
+	// Server only, see getCachedTrain
+	Train train;
 
 	/*
 	 * 
@@ -149,6 +154,66 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 		return super.onClick(player, hand);
 	}
 
+	@Override
+	public String tryJoinWorld() {
+		String error = super.tryJoinWorld();
+		if (error == null && getWorld().isServer) {
+			StockIndex.get(getWorld()).add(this);
+		}
+		return error;
+	}
+
+	@Override
+	public void onRemoved() {
+		super.onRemoved();
+
+		if (getWorld().isServer) {
+			StockIndex.get(getWorld()).remove(this);
+		}
+	}
+
+	/**
+	 * Wakes this stock back up in the simulation, call whenever something that affects the physics changes
+	 */
+	public void markSimulationActive() {
+		if (getWorld().isServer) {
+			StockIndex.get(getWorld()).markActive(this);
+		}
+	}
+
+	/**
+	 * Server only, shared by the whole (engaged) train until a coupling changes
+	 */
+	public Train getCachedTrain() {
+		if (train == null || !train.isValid()) {
+			Train.build(this);
+		}
+		return train;
+	}
+
+	/**
+	 * Drops the cached train of this stock and of the stock coupled to it, the rest of the world keeps theirs
+	 */
+	public void invalidateTrain() {
+		if (train != null) {
+			train.invalidate();
+		}
+		for (CouplerType coupler : CouplerType.values()) {
+			UUID id = getCoupledUUID(coupler);
+			EntityCoupleableRollingStock coupled = id != null ? StockIndex.get(getWorld()).get(id) : null;
+			if (coupled != null && coupled.train != null) {
+				coupled.train.invalidate();
+			}
+		}
+	}
+
+	private void couplingChanged() {
+		markSimulationActive();
+		if (getWorld().isServer) {
+			invalidateTrain();
+		}
+	}
+
 	@Override
 	public void onTick() {
 		super.onTick();
@@ -168,28 +233,27 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 			return;
 		}
 
-		for (Control<?> control : getDefinition().getModel().getControls()) {
-			if (control.part.type == ModelComponentType.COUPLER_ENGAGED_X) {
-				if (control.part.pos.contains(ModelPosition.FRONT)) {
-					if (isCouplerEngaged(CouplerType.FRONT) ^ (getControlPosition(control) < 0.5)) {
-						setCouplerEngaged(CouplerType.FRONT, getControlPosition(control) < 0.5);
-					}
+		if (StockIndex.get(world).get(getUUID()) != this) {
+			// Missed the join (or replaced by a reload of the same stock)
+			StockIndex.get(world).add(this);
+		}
+
+		for (Control<?> control : getDefinition().getModel().getControls(ModelComponentType.COUPLER_ENGAGED_X)) {
+			if (control.part.pos.contains(ModelPosition.FRONT)) {
+				if (isCouplerEngaged(CouplerType.FRONT) ^ (getControlPosition(control) < 0.5)) {
+					setCouplerEngaged(CouplerType.FRONT, getControlPosition(control) < 0.5);
 				}
-				if (control.part.pos.contains(ModelPosition.REAR)) {
-					if (isCouplerEngaged(CouplerType.BACK) ^ (getControlPosition(control) < 0.5)) {
-						setCouplerEngaged(CouplerType.BACK, getControlPosition(control) < 0.5);
-					}
+			}
+			if (control.part.pos.contains(ModelPosition.REAR)) {
+				if (isCouplerEngaged(CouplerType.BACK) ^ (getControlPosition(control) < 0.5)) {
+					setCouplerEngaged(CouplerType.BACK, getControlPosition(control) < 0.5);
 				}
 			}
 		}
 
 
-		if (this.getTickCount() % 5 == 0) {
-			hasElectricalPower = false;
-			this.mapTrain(this, false, stock ->
-					hasElectricalPower = hasElectricalPower ||
-							stock instanceof Locomotive && ((Locomotive) stock).providesElectricalPower()
-			);
+		if (Housekeeping.isDue(world, Task.ELECTRICAL_POWER, getUUID().hashCode())) {
+			hasElectricalPower = getCachedTrain().hasElectricalPower();
 		}
 
 		hadElectricalPower = hasElectricalPower();
@@ -269,6 +333,8 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 				coupledBack = id;
 				break;
 		}
+		// After the change so the new neighbor's train is dropped too, the old one shared ours if it was engaged
+		couplingChanged();
 	}
 
 	public final UUID getCoupledUUID(CouplerType coupler) {
@@ -316,19 +382,22 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 	}
 	
 	public void setCouplerEngaged(CouplerType coupler, boolean engaged) {
+		if (isCouplerEngaged(coupler) != engaged) {
+			couplingChanged();
+		}
 		switch (coupler) {
 		case FRONT:
 			frontCouplerEngaged = engaged;
-			for (Control<?> control : getDefinition().getModel().getControls()) {
-				if (control.part.type == ModelComponentType.COUPLER_ENGAGED_X && control.part.pos.contains(ModelPosition.FRONT)) {
+			for (Control<?> control : getDefinition().getModel().getControls(ModelComponentType.COUPLER_ENGAGED_X)) {
+				if (control.part.pos.contains(ModelPosition.FRONT)) {
 					setControlPosition(control, engaged ? 0 : 1);
 				}
 			}
 			break;
 		case BACK:
 			backCouplerEngaged = engaged;
-			for (Control<?> control : getDefinition().getModel().getControls()) {
-				if (control.part.type == ModelComponentType.COUPLER_ENGAGED_X && control.part.pos.contains(ModelPosition.REAR)) {
+			for (Control<?> control : getDefinition().getModel().getControls(ModelComponentType.COUPLER_ENGAGED_X)) {
+				if (control.part.pos.contains(ModelPosition.REAR)) {
 					setControlPosition(control, engaged ? 0 : 1);
 				}
 			}
@@ -378,6 +447,13 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 	}
 	
 	public final void mapTrain(EntityCoupleableRollingStock prev, boolean direction, boolean followDisengaged, BiConsumer<EntityCoupleableRollingStock, Boolean> fn) {
+		if (!followDisengaged && getWorld().isServer) {
+			Train train = getCachedTrain();
+			for (EntityCoupleableRollingStock stock : train.getMembers()) {
+				fn.accept(stock, train.isSameDirection(this, stock));
+			}
+			return;
+		}
 		for (DirectionalStock stock : getDirectionalTrain(followDisengaged)) {
 			fn.accept(stock.stock, stock.direction);
 		}
@@ -455,9 +531,22 @@ public abstract class EntityCoupleableRollingStock extends EntityMoveableRolling
 		return getWorld().getEntity(uuid, EntityCoupleableRollingStock.class);
 	}
 
+    @Override
+    public void setIndependentBrake(float newIndependentBrake) {
+        float oldIndependentBrake = getIndependentBrake();
+        super.setIndependentBrake(newIndependentBrake);
+        if (oldIndependentBrake != getIndependentBrake()) {
+            markSimulationActive();
+        }
+    }
+
     @Override
     public void setControlPosition(Control<?> component, float val) {
+        float oldVal = getControlPosition(component);
         super.setControlPosition(component, val);
+        if (oldVal != getControlPosition(component)) {
+            markSimulationActive();
+        }
         if (component.global) {
 			this.mapTrain(this, false, stock -> {
 				stock.controlPositions.put(component.controlGroup, this.getControlData(component));
@@ -1,7 +1,9 @@
 package cam72cam.immersiverailroading.entity;
 
 import cam72cam.immersiverailroading.Config;
+import cam72cam.immersiverailroading.entity.physics.EntityGrid;
 import cam72cam.immersiverailroading.entity.physics.SimulationState;
+import cam72cam.immersiverailroading.entity.physics.StateBuffer;
 import cam72cam.immersiverailroading.entity.physics.chrono.ChronoState;
 import cam72cam.immersiverailroading.entity.physics.chrono.ServerChronoState;
 import cam72cam.immersiverailroading.library.Augment;
@@ -12,6 +14,7 @@ import cam72cam.immersiverailroading.model.part.Control;
 import cam72cam.immersiverailroading.net.SoundPacket;
 import cam72cam.immersiverailroading.physics.TickPos;
 import cam72cam.immersiverailroading.tile.TileRailBase;
+import cam72cam.immersiverailroading.util.HeightMap;
 import cam72cam.immersiverailroading.util.RealBB;
 import cam72cam.immersiverailroading.util.Speed;
 import cam72cam.mod.entity.Entity;
@@ -39,11 +42,12 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
     @TagField("distanceTraveled")
     public double distanceTraveled = 0;
     private Speed currentSpeed;
-    @TagField(value = "positions", mapper = TickPos.ListTagMapper.class)
+    // Client: synced predictions.  Server: only what was loaded from disk, the live predictions are in the StateBuffer
     public List<TickPos> positions = new ArrayList<>();
     public List<SimulationState> states = new ArrayList<>();
+    private TickPos serverTickPos;
     private RealBB boundingBox;
-    private float[][] heightMapCache;
+    private HeightMap heightMapCache;
     @TagSync
     @TagField("IND_BRAKE")
     private float independentBrake = 0;
@@ -64,6 +68,8 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
     public void load(TagCompound data) {
         super.load(data);
 
+        positions = TickPos.getList(data, "positions");
+
         if (frontYaw == null) {
             frontYaw = getRotationYaw();
         }
@@ -72,9 +78,26 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
         }
     }
 
+    @Override
+    public void save(TagCompound data) {
+        super.save(data);
+
+        List<TickPos> saved = positions;
+        if (getWorld().isServer && ChronoState.getState(getWorld()) != null) {
+            // Only converted from the StateBuffer when actually saved
+            int tickID = (int) Math.floor(ChronoState.getState(getWorld()).getTickID());
+            List<TickPos> predicted = StateBuffer.get(getWorld()).getTickPositions(getUUID(), tickID);
+            if (!predicted.isEmpty()) {
+                saved = predicted;
+            }
+        }
+        TickPos.setList(data, "positions", saved);
+    }
+
     public void initPositions(TickPos tp) {
         this.positions = new ArrayList<>();
         this.positions.add(tp);
+        this.serverTickPos = null;
     }
 
     /*
@@ -86,7 +109,7 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
         this.boundingBox = null;
     }
 
-    private float[][] getHeightMap() {
+    private HeightMap getHeightMap() {
         if (this.heightMapCache == null) {
             this.heightMapCache = this.getDefinition().createHeightMap(this);
         }
@@ -167,6 +190,17 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
         double tick = ChronoState.getState(getWorld()).getTickID();
         int currentTickID = (int) Math.floor(tick);
         int nextTickID = (int) Math.ceil(tick);
+
+        if (getWorld().isServer) {
+            // The server reads straight from the simulation's predictions, positions only covers the time after loading
+            if (serverTickPos == null || serverTickPos.tickID != currentTickID) {
+                serverTickPos = StateBuffer.get(getWorld()).getTickPos(getUUID(), currentTickID);
+            }
+            if (serverTickPos != null) {
+                return serverTickPos;
+            }
+        }
+
         TickPos current = null;
         TickPos next = null;
 
@@ -226,11 +260,9 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
         super.onTick();
 
         if (getWorld().isServer) {
-            if (getDefinition().hasIndependentBrake()) {
-                for (Control<?> control : getDefinition().getModel().getControls()) {
-                    if (!getDefinition().isLinearBrakeControl() && control.part.type == ModelComponentType.INDEPENDENT_BRAKE_X) {
-                        setIndependentBrake(Math.max(0, Math.min(1, getIndependentBrake() + (getControlPosition(control) - 0.5f) / 8)));
-                    }
+            if (getDefinition().hasIndependentBrake() && !getDefinition().isLinearBrakeControl()) {
+                for (Control<?> control : getDefinition().getModel().getControls(ModelComponentType.INDEPENDENT_BRAKE_X)) {
+                    setIndependentBrake(Math.max(0, Math.min(1, getIndependentBrake() + (getControlPosition(control) - 0.5f) / 8)));
                 }
             }
 
@@ -296,19 +328,10 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
         }
 
         if (Math.abs(this.getCurrentSpeed().metric()) > 1) {
-			List<Entity> entitiesWithin = getWorld().getEntities((Entity entity) -> (entity.isLiving() || entity.isPlayer()) && this.getCollision().intersects(entity.getBounds()), Entity.class);
+			EntityGrid grid = EntityGrid.get(getWorld());
+			// Excludes stock and passengers
+			List<Entity> entitiesWithin = grid.getIntersecting(this.getCollision());
 			for (Entity entity : entitiesWithin) {
-				if (entity instanceof EntityMoveableRollingStock) {
-					// rolling stock collisions handled by looking at the front and
-					// rear coupler offsets
-					continue;
-				} 
-	
-				if (entity.getRiding() instanceof EntityMoveableRollingStock) {
-					// Don't apply bb to passengers
-					continue;
-				}
-				
 				if (entity.isPlayer()) {
 					if (entity.getTickCount() < 20 * 5) {
 						// Give the internal a chance to getContents out of the way
@@ -316,15 +339,6 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
 					}
 				}
 	
-				
-				// Chunk.getEntitiesOfTypeWithinAABB() does a reverse aabb intersect
-				// We need to do a forward lookup
-                // TODO move this to UMC?
-				if (!this.getCollision().intersects(entity.getBounds())) {
-					// miss
-					continue;
-				}
-	
 				// Move entity
 
 				entity.setVelocity(this.getVelocity().scale(2));
@@ -343,22 +357,8 @@ public abstract class EntityMoveableRollingStock extends EntityRidableRollingSto
 	
 			// Riding on top of cars
 			final RealBB bb = this.getCollision().offset(new Vec3d(0, gauge.scale()*2, 0));
-            List<Entity> entitiesAbove = getWorld().getEntities((Entity entity) -> (entity.isLiving() || entity.isPlayer()) && bb.intersects(entity.getBounds()), Entity.class);
+			List<Entity> entitiesAbove = grid.getIntersecting(bb);
 			for (Entity entity : entitiesAbove) {
-				if (entity instanceof EntityMoveableRollingStock) {
-					continue;
-				}
-				if (entity.getRiding() instanceof EntityMoveableRollingStock) {
-					continue;
-				}
-	
-				// Chunk.getEntitiesOfTypeWithinAABB() does a reverse aabb intersect
-				// We need to do a forward lookup
-				if (!bb.intersects(entity.getBounds())) {
-					// miss
-					continue;
-				}
-				
 				//Vec3d pos = entity.getPositionVector();
 				//pos = pos.addVector(this.motionX, this.motionY, this.motionZ);
 				//entity.setPosition(pos.x, pos.y, pos.z);
@@ -9,6 +9,8 @@ import cam72cam.immersiverailroading.library.*;
 import cam72cam.immersiverailroading.model.part.Control;
 import cam72cam.immersiverailroading.registry.DefinitionManager;
 import cam72cam.immersiverailroading.registry.EntityRollingStockDefinition;
+import cam72cam.immersiverailroading.util.Housekeeping;
+import cam72cam.immersiverailroading.util.Housekeeping.Task;
 import cam72cam.mod.entity.*;
 import cam72cam.mod.entity.sync.TagSync;
 import cam72cam.mod.entity.custom.*;
@@ -107,7 +109,7 @@ public class EntityRollingStock extends CustomEntity implements ITickable, IClic
 
 	@Override
 	public void onTick() {
-		if (getWorld().isServer && this.getTickCount() % 5 == 0) {
+		if (getWorld().isServer && Housekeeping.isDue(getWorld(), Task.DEFINITION_CHECK, getUUID().hashCode())) {
 			EntityRollingStockDefinition def = DefinitionManager.getDefinition(defID);
 			if (def == null) {
 				this.kill();
@@ -310,7 +312,8 @@ public class EntityRollingStock extends CustomEntity implements ITickable, IClic
 	}
 
 	public boolean getControlPressed(Control<?> control) {
-		return getControlData(control).getLeft();
+		Pair<Boolean, Float> data = controlPositions.get(control.controlGroup);
+		return data != null && data.getLeft();
 	}
 
 	public void setControlPressed(Control<?> control, boolean pressed) {
@@ -318,7 +321,20 @@ public class EntityRollingStock extends CustomEntity implements ITickable, IClic
 	}
 
 	public float getControlPosition(Control<?> control) {
-		return getControlData(control).getRight();
+		// Called every tick for every control, avoid building the default pair
+		Pair<Boolean, Float> data = controlPositions.get(control.controlGroup);
+		return data != null ? data.getRight() : defaultControlPosition(control);
+	}
+
+	/**
+	 * @return highest position of the controls of the given type, 0 if there are none
+	 */
+	public float getMaxControlPosition(ModelComponentType type) {
+		float max = 0;
+		for (Control<?> control : getDefinition().getModel().getControls(type)) {
+			max = Math.max(max, getControlPosition(control));
+		}
+		return max;
 	}
 
 	public float getControlPosition(String control) {
@@ -327,6 +343,10 @@ public class EntityRollingStock extends CustomEntity implements ITickable, IClic
 
 	public void setControlPosition(Control<?> control, float val) {
 		val = Math.min(1, Math.max(0, val));
+		Pair<Boolean, Float> data = controlPositions.get(control.controlGroup);
+		if (data != null && data.getRight() == val) {
+			return;
+		}
 		controlPositions.put(control.controlGroup, Pair.of(getControlPressed(control), val));
 	}
 
@@ -336,7 +356,9 @@ public class EntityRollingStock extends CustomEntity implements ITickable, IClic
 	}
 
 	public void setControlPositions(ModelComponentType type, float val) {
-		getDefinition().getModel().getControls().stream().filter(x -> x.part.type == type).forEach(c -> setControlPosition(c, val));
+		for (Control<?> control : getDefinition().getModel().getControls(type)) {
+			setControlPosition(control, val);
+		}
 	}
 
 	public boolean playerCanDrag(Player player, Control<?> control) {
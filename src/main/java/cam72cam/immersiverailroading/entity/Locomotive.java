@@ -11,6 +11,8 @@ import cam72cam.immersiverailroading.registry.LocomotiveDefinition;
 import cam72cam.immersiverailroading.thirdparty.trackapi.ITrack;
 import cam72cam.immersiverailroading.tile.TileRailBase;
 import cam72cam.immersiverailroading.util.Speed;
+import cam72cam.immersiverailroading.util.Housekeeping;
+import cam72cam.immersiverailroading.util.Housekeeping.Task;
 import cam72cam.mod.entity.Entity;
 import cam72cam.mod.entity.Player;
 import cam72cam.mod.entity.sync.TagSync;
@@ -19,7 +21,6 @@ import cam72cam.mod.serialization.StrictTagMapper;
 import cam72cam.mod.serialization.TagField;
 import cam72cam.mod.world.World;
 
-import java.util.OptionalDouble;
 import java.util.UUID;
 
 import static cam72cam.immersiverailroading.library.PhysicalMaterials.*;
@@ -328,9 +329,9 @@ public abstract class Locomotive extends FreightTank {
 		
 		if (getWorld().isServer) {
 			sync.setInterval(5);
-			for (Control<?> control : getDefinition().getModel().getControls()) {
-				// Logic duplicated in Readouts#setValue
-				if (!getDefinition().isLinearBrakeControl() && control.part.type == ModelComponentType.TRAIN_BRAKE_X) {
+			if (!getDefinition().isLinearBrakeControl()) {
+				for (Control<?> control : getDefinition().getModel().getControls(ModelComponentType.TRAIN_BRAKE_X)) {
+					// Logic duplicated in Readouts#setValue
 					setTrainBrake(Math.max(0, Math.min(1, getTrainBrake() + (getControlPosition(control) - 0.5f) / 8)));
 				}
 			}
@@ -357,11 +358,7 @@ public abstract class Locomotive extends FreightTank {
 			if (hornTime == 0) {
 				hornPull = 0;
 			}
-			OptionalDouble control = this.getDefinition().getModel().getControls().stream()
-					.filter(x -> x.part.type == ModelComponentType.BELL_CONTROL_X)
-					.mapToDouble(this::getControlPosition)
-					.max();
-			if (control.isPresent() && control.getAsDouble() > 0) {
+			if (getMaxControlPosition(ModelComponentType.BELL_CONTROL_X) > 0) {
 				bellTime = 10;
 				bellControl = true;
 			}
@@ -382,7 +379,7 @@ public abstract class Locomotive extends FreightTank {
 		}
 
 		if (getWorld().isServer) {
-			if (getDefinition().isCog() && getTickCount() % 20 == 0) {
+			if (getDefinition().isCog() && Housekeeping.isDue(getWorld(), Task.COG_PROBE, getUUID().hashCode())) {
 				SimulationState state = getCurrentState();
 				if (state != null) {
 					ITrack found = MovementTrack.findTrack(getWorld(), state.couplerPositionFront, state.yaw, gauge.value());
@@ -497,6 +494,7 @@ public abstract class Locomotive extends FreightTank {
 		if (this.getThrottle() != newThrottle) {
 			setControlPositions(ModelComponentType.THROTTLE_X, newThrottle);
 			throttle = newThrottle;
+			markSimulationActive();
 			setControlPositions(ModelComponentType.THROTTLE_BRAKE_X, getThrottle()/2 + (1- getTrainBrake())/2);
 		}
 	}
@@ -516,6 +514,7 @@ public abstract class Locomotive extends FreightTank {
 		if (this.getReverser() != newReverser) {
 			setControlPositions(ModelComponentType.REVERSER_X, newReverser/-2 + 0.5f);
 			reverser = newReverser;
+			markSimulationActive();
 		}
 	}
 
@@ -555,12 +554,7 @@ public abstract class Locomotive extends FreightTank {
 		if (getHornPlayer() != null) {
 			return (getHornPlayer().getRotationPitch() + 90) / 180;
 		}
-		double control = this.getDefinition().getModel().getControls().stream()
-				.filter(x -> x.part.type == ModelComponentType.WHISTLE_CONTROL_X)
-				.mapToDouble(this::getControlPosition)
-				.max().orElse(0);
-
-		return Math.max((float)control, hornPull);
+		return Math.max(getMaxControlPosition(ModelComponentType.WHISTLE_CONTROL_X), hornPull);
 	}
 
 	@Deprecated
@@ -587,6 +581,7 @@ public abstract class Locomotive extends FreightTank {
 				setControlPositions(ModelComponentType.TRAIN_BRAKE_X, newTrainBrake);
 			}
 			trainBrake = newTrainBrake;
+			markSimulationActive();
 			setControlPositions(ModelComponentType.THROTTLE_BRAKE_X, getThrottle()/2 + (1- getTrainBrake())/2);
 		}
 	}
@@ -17,7 +17,6 @@ import cam72cam.mod.fluid.FluidStack;
 import cam72cam.mod.serialization.TagField;
 
 import java.util.List;
-import java.util.OptionalDouble;
 
 public class LocomotiveDiesel extends Locomotive {
 
@@ -194,11 +193,7 @@ public class LocomotiveDiesel extends Locomotive {
 			return;
 		}
 
-		OptionalDouble control = this.getDefinition().getModel().getControls().stream()
-				.filter(x -> x.part.type == ModelComponentType.HORN_CONTROL_X)
-				.mapToDouble(this::getControlPosition)
-				.max();
-		if (control.isPresent() && control.getAsDouble() > 0) {
+		if (getMaxControlPosition(ModelComponentType.HORN_CONTROL_X) > 0) {
 			this.setHorn(10, hornPlayer);
 		}
 
@@ -278,8 +273,7 @@ public class LocomotiveDiesel extends Locomotive {
 	public void onDragRelease(Control<?> component) {
 		super.onDragRelease(component);
 		if (component.part.type == ModelComponentType.ENGINE_START_X) {
-			turnedOn = getDefinition().getModel().getControls().stream()
-					.filter(c -> c.part.type == ModelComponentType.ENGINE_START_X)
+			turnedOn = getDefinition().getModel().getControls(ModelComponentType.ENGINE_START_X).stream()
 					.allMatch(c -> getControlPosition(c) == 1);
 		}
 		if (component.part.type == ModelComponentType.REVERSER_X) {
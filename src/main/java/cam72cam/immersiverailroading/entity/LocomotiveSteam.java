@@ -9,6 +9,8 @@ import cam72cam.immersiverailroading.library.Permissions;
 import cam72cam.immersiverailroading.model.part.Control;
 import cam72cam.immersiverailroading.registry.LocomotiveSteamDefinition;
 import cam72cam.immersiverailroading.util.BurnUtil;
+import cam72cam.immersiverailroading.util.Housekeeping;
+import cam72cam.immersiverailroading.util.Housekeeping.Task;
 import cam72cam.immersiverailroading.util.FluidQuantity;
 import cam72cam.immersiverailroading.util.LiquidUtil;
 import cam72cam.immersiverailroading.util.Speed;
@@ -23,7 +25,6 @@ import cam72cam.mod.serialization.TagField;
 import cam72cam.mod.serialization.TagMapper;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class LocomotiveSteam extends Locomotive {
 	// PSI
@@ -170,11 +171,7 @@ public class LocomotiveSteam extends Locomotive {
 		}
 
 
-		OptionalDouble control = this.getDefinition().getModel().getControls().stream()
-				.filter(x -> x.part.type == ModelComponentType.WHISTLE_CONTROL_X)
-				.mapToDouble(this::getControlPosition)
-				.max();
-		if (control.isPresent() && control.getAsDouble() > 0) {
+		if (getMaxControlPosition(ModelComponentType.WHISTLE_CONTROL_X) > 0) {
 			this.setHorn(10, hornPlayer);
 		}
 
@@ -182,18 +179,18 @@ public class LocomotiveSteam extends Locomotive {
 			return;
 		}
 
-		EntityCoupleableRollingStock stock = this;
 		CouplerType coupler = getDefinition().cab_forward ? CouplerType.FRONT : CouplerType.BACK;
-		while (coupler != null && stock.getCoupled(coupler) instanceof Tender) {
-			Tender tender = (Tender) stock.getCoupled(coupler);
-
+		List<Tender> tenders = getCachedTrain().getTenders(this, coupler);
+		boolean topOff = !tenders.isEmpty() && this.getDefinition().tender_auto_feed &&
+				Housekeeping.isDue(getWorld(), Task.TENDER_FEED, getUUID().hashCode());
+		for (Tender tender : tenders) {
 			// Only drain 10mb at a time from the tender
 			int desiredDrain = 10;
 			if (getTankCapacity().MilliBuckets() - getServerLiquidAmount() >= 10) {
 				theTank.drain(tender.theTank, desiredDrain, false);
 			}
 
-			if (this.getTickCount() % 20 == 0 && this.getDefinition().tender_auto_feed) {
+			if (topOff) {
 				// Top off stacks
 				for (int slot = 2; slot < this.cargoItems.getSlotCount(); slot ++) {
 					if (BurnUtil.getBurnTime(this.cargoItems.get(slot)) != 0) {
@@ -208,12 +205,6 @@ public class LocomotiveSteam extends Locomotive {
 					}
 				}
 			}
-			coupler = tender.getCouplerFor(stock);
-			if (coupler == null) {
-				break;
-			}
-			coupler = coupler.opposite();
-			stock = tender;
 		}
 		
 		float boilerTemperature = getBoilerTemperature();
@@ -430,8 +421,7 @@ public class LocomotiveSteam extends Locomotive {
 	}
 
 	public boolean cylinderDrainsEnabled() {
-		// This could be optimized to once-per-tick, but I'm not sure that is necessary
-		List<Control<?>> drains = getDefinition().getModel().getControls().stream().filter(x -> x.part.type == ModelComponentType.CYLINDER_DRAIN_CONTROL_X).collect(Collectors.toList());
+		List<? extends Control<?>> drains = getDefinition().getModel().getControls(ModelComponentType.CYLINDER_DRAIN_CONTROL_X);
 		if (drains.isEmpty()) {
 			double csm = Math.abs(getCurrentSpeed().metric()) / gauge.scale();
 			return csm < 20;
@@ -441,11 +431,6 @@ public class LocomotiveSteam extends Locomotive {
 	}
 
 	public void setCylinderDrains(boolean enabled) {
-		// This could be optimized to once-per-tick, but I'm not sure that is necessary
-		List<Control<?>> drains = getDefinition().getModel().getControls().stream().filter(x -> x.part.type == ModelComponentType.CYLINDER_DRAIN_CONTROL_X).collect(Collectors.toList());
-
-		for (Control<?> drain : drains) {
-			setControlPosition(drain, enabled ? 1 : 0);
-		}
+		setControlPositions(ModelComponentType.CYLINDER_DRAIN_CONTROL_X, enabled ? 1 : 0);
 	}
 }
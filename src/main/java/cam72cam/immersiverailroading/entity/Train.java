@@ -0,0 +1,129 @@
+package cam72cam.immersiverailroading.entity;
+
+import cam72cam.immersiverailroading.entity.EntityCoupleableRollingStock.CouplerType;
+import cam72cam.immersiverailroading.entity.EntityCoupleableRollingStock.DirectionalStock;
+
+import java.util.*;
+
+/**
+ * Server side view of the stock coupled together through engaged couplers
+ *
+ * Built by whichever member asks first and shared by the whole train until one of its members (or stock coupled to
+ * one of them) is loaded, unloaded or has a coupling change, see EntityCoupleableRollingStock.invalidateTrain.
+ * Aggregates which depend on the state of the stock itself (power, weight) are re-evaluated at most once per tick.
+ */
+public class Train {
+	// End to end
+	private final List<EntityCoupleableRollingStock> members;
+	// Relative to the stock the train was built from
+	private final Map<UUID, Boolean> directions = new HashMap<>();
+	private final Map<UUID, List<Tender>> tenders = new HashMap<>();
+
+	private boolean valid = true;
+	private long evaluatedTick = -1;
+	private boolean electricalPower;
+	private double weightKg;
+
+	private Train(List<EntityCoupleableRollingStock> members) {
+		this.members = Collections.unmodifiableList(members);
+	}
+
+	static Train build(EntityCoupleableRollingStock origin) {
+		List<DirectionalStock> walk = new ArrayList<>(origin.getDirectionalTrain(false));
+
+		// The walk is the origin, everything through one coupler, then everything through the other coupler
+		int split = walk.size();
+		for (int i = 2; i < walk.size(); i++) {
+			if (walk.get(i).prev == origin) {
+				split = i;
+				break;
+			}
+		}
+
+		List<EntityCoupleableRollingStock> ordered = new ArrayList<>(walk.size());
+		for (int i = split - 1; i >= 1; i--) {
+			ordered.add(walk.get(i).stock);
+		}
+		ordered.add(origin);
+		for (int i = split; i < walk.size(); i++) {
+			ordered.add(walk.get(i).stock);
+		}
+
+		Train train = new Train(ordered);
+		for (DirectionalStock stock : walk) {
+			train.directions.put(stock.stock.getUUID(), stock.direction);
+			stock.stock.train = train;
+		}
+		return train;
+	}
+
+	boolean isValid() {
+		return valid;
+	}
+
+	void invalidate() {
+		valid = false;
+	}
+
+	public List<EntityCoupleableRollingStock> getMembers() {
+		return members;
+	}
+
+	/**
+	 * @return true if both members face the same way
+	 */
+	public boolean isSameDirection(EntityCoupleableRollingStock a, EntityCoupleableRollingStock b) {
+		return Objects.equals(directions.get(a.getUUID()), directions.get(b.getUUID()));
+	}
+
+	private void evaluate() {
+		long tick = members.get(0).getWorld().getTicks();
+		if (evaluatedTick == tick) {
+			return;
+		}
+		evaluatedTick = tick;
+
+		electricalPower = false;
+		weightKg = 0;
+		for (EntityCoupleableRollingStock stock : members) {
+			electricalPower = electricalPower || stock instanceof Locomotive && ((Locomotive) stock).providesElectricalPower();
+			weightKg += stock.getWeight();
+		}
+	}
+
+	public boolean hasElectricalPower() {
+		evaluate();
+		return electricalPower;
+	}
+
+	/**
+	 * @return weight of the whole train in Kg
+	 */
+	public double getWeight() {
+		evaluate();
+		return weightKg;
+	}
+
+	/**
+	 * Tenders directly coupled (engaged or not) behind the given stock, closest first
+	 */
+	public List<Tender> getTenders(EntityCoupleableRollingStock start, CouplerType startCoupler) {
+		return tenders.computeIfAbsent(start.getUUID(), id -> {
+			List<Tender> chain = new ArrayList<>();
+			EntityCoupleableRollingStock stock = start;
+			CouplerType coupler = startCoupler;
+			while (coupler != null && stock.getCoupled(coupler) instanceof Tender) {
+				Tender tender = (Tender) stock.getCoupled(coupler);
+				chain.add(tender);
+
+				coupler = tender.getCouplerFor(stock);
+				if (coupler == null) {
+					break;
+				}
+				coupler = coupler.opposite();
+				stock = tender;
+			}
+			return chain;
+		});
+	}
+}
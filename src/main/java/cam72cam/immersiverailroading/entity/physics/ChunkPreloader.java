@@ -0,0 +1,140 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.Config.ConfigPerformance;
+import cam72cam.immersiverailroading.ImmersiveRailroading;
+import cam72cam.immersiverailroading.physics.MovementTrack;
+import cam72cam.immersiverailroading.thirdparty.trackapi.ITrack;
+import cam72cam.immersiverailroading.util.VecUtil;
+import cam72cam.mod.math.Vec3d;
+import cam72cam.mod.math.Vec3i;
+import cam72cam.mod.world.World;
+
+import java.util.*;
+
+/**
+ * Keeps the chunks a moving consist is about to enter loaded ahead of time
+ *
+ * After each simulation pass the track is followed from the leading end of every moving consist for
+ * ConfigPerformance.chunkPreloadSeconds worth of travel.  Those chunks are kept loaded, and the ones which are not
+ * loaded yet are loaded a few at a time between passes, so the physics step itself rarely has to stop and load a
+ * chunk.  Chunks stay requested for a while after the prediction moves on so they don't flap in and out.
+ */
+public class ChunkPreloader {
+    private static final Map<World, ChunkPreloader> preloaders = new HashMap<>();
+    // Distance between track probes while predicting
+    private static final double stepBlocks = 4;
+
+    private final World world;
+    // chunk key -> position to load and tick the request expires
+    private final Map<Long, Vec3i> positions = new HashMap<>();
+    private final Map<Long, Long> expires = new HashMap<>();
+
+    private ChunkPreloader(World world) {
+        this.world = world;
+    }
+
+    public static ChunkPreloader get(World world) {
+        return preloaders.computeIfAbsent(world, ChunkPreloader::new);
+    }
+
+    private static long chunkKey(Vec3i pos) {
+        return ((long) (pos.x >> 4) << 32) | ((pos.z >> 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param states furthest predicted states of the pass
+     */
+    public void update(Collection<SimulationState> states) {
+        if (ConfigPerformance.chunkPreloadSeconds <= 0) {
+            positions.clear();
+            expires.clear();
+            return;
+        }
+
+        long tick = world.getTicks();
+        // Hysteresis: keep a chunk around for twice as long as it takes to predict past it
+        long expiry = tick + ConfigPerformance.chunkPreloadSeconds * 20L * 2;
+
+        Map<UUID, SimulationState> byId = new HashMap<>();
+        for (SimulationState state : states) {
+            byId.put(state.config.id, state);
+        }
+
+        Set<Consist> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SimulationState state : states) {
+            if (state.atRest || state.velocity == 0 || state.consist == null || state.consist.ids == null || !seen.add(state.consist)) {
+                continue;
+            }
+            SimulationState lead = leading(state.consist, byId);
+            if (lead != null) {
+                predict(lead, expiry);
+            }
+        }
+
+        // Release with hysteresis
+        expires.entrySet().removeIf(entry -> entry.getValue() < tick);
+        positions.keySet().retainAll(expires.keySet());
+
+        int budget = ConfigPerformance.chunkPreloadPerPass;
+        for (Vec3i pos : positions.values()) {
+            world.keepLoaded(pos);
+            if (budget > 0 && !world.isBlockLoaded(pos)) {
+                ImmersiveRailroading.debug("Preloading chunk at position %s", pos);
+                world.getBlock(pos);
+                budget--;
+            }
+        }
+    }
+
+    /**
+     * @return the end of the consist which is moving away from the rest of it
+     */
+    private static SimulationState leading(Consist consist, Map<UUID, SimulationState> byId) {
+        SimulationState first = byId.get(consist.ids.get(0));
+        SimulationState last = byId.get(consist.ids.get(consist.ids.size() - 1));
+        if (first == null || last == null) {
+            return first != null ? first : last;
+        }
+        if (first == last) {
+            return first;
+        }
+        Vec3d motion = VecUtil.fromWrongYaw(Math.signum(first.velocity), first.yaw);
+        Vec3d outward = first.position.subtract(last.position);
+        return motion.x * outward.x + motion.z * outward.z >= 0 ? first : last;
+    }
+
+    private void predict(SimulationState lead, long expiry) {
+        double remaining = Math.abs(lead.velocity) * 20 * ConfigPerformance.chunkPreloadSeconds;
+        Vec3d position = lead.position;
+        Vec3d motion = VecUtil.fromWrongYaw(stepBlocks * Math.signum(lead.velocity), lead.yaw);
+        boolean onTrack = true;
+
+        while (remaining > 0) {
+            Vec3i block = new Vec3i(position);
+            long key = chunkKey(block);
+            positions.putIfAbsent(key, block);
+            expires.put(key, expiry);
+
+            // Follow the track as long as it is loaded, past that just keep going in the same direction
+            onTrack = onTrack && world.isBlockLoaded(block);
+            ITrack track = onTrack ? MovementTrack.findTrack(world, position, VecUtil.toWrongYaw(motion), lead.config.gauge.value()) : null;
+            if (track != null) {
+                // Step to the point on the track, stepping along the tangent would drift off the outside of curves
+                Vec3d next = track.getNextPosition(position, motion);
+                Vec3d delta = next.subtract(position);
+                if (delta.lengthSquared() > 0.0001) {
+                    motion = delta.normalize().scale(stepBlocks);
+                }
+                position = next;
+            } else {
+                onTrack = false;
+                position = position.add(motion);
+            }
+            remaining -= stepBlocks;
+        }
+    }
+
+    public int size() {
+        return positions.size();
+    }
+}
@@ -9,6 +9,7 @@ import cam72cam.mod.serialization.TagCompound;
 import cam72cam.mod.serialization.TagField;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 /**
@@ -216,7 +217,7 @@ public class Consist {
 
 
 
-        public SimulationState applyToState(List<Vec3i> blocksAlreadyBroken) {
+        public SimulationState applyToState(Set<Vec3i> blocksAlreadyBroken) {
             double velocityMPT = Speed.fromMetric(this.velocity_M_S * 3.6).minecraft(); // per 1 tick
 
             // Calculate the applied velocity from this particle.  This should not include the coupler adjustment speed/distance below
@@ -387,67 +388,156 @@ public class Consist {
         }
     }
 
-    public static void iterate(Map<UUID, SimulationState> states, Map<UUID, SimulationState> nextStateMap, List<Vec3i> blocksAlreadyBroken) {
-        debug = false;
-        // ordered
-        List<Particle> particles = new ArrayList<>();
-
-        List<SimulationState> used = new ArrayList<>();
+    /**
+     * Ordered layout of every consist (ids and particle directions) as discovered from the coupler links.
+     *
+     * The links only change when stock couples/decouples, so the layout can be reused between the iterations of a
+     * simulation pass as long as every state still points at the same neighbors.
+     */
+    public static class Topology {
+        private final List<UUID[]> consists = new ArrayList<>();
+        private final List<boolean[]> directions = new ArrayList<>();
+        // id -> {front, rear} at the time of discovery
+        private final Map<UUID, UUID[]> links = new HashMap<>();
+
+        private Topology() {
+        }
 
-        if (!states.isEmpty()) {
-            if (debug) {
-                System.out.println("=============BOUNDARY==========");
-                // This shows that the movement between consist simulations is not exact.
-                // Some instability can be seen between ticks as the couplers get slack introduced
-            }
+        /**
+         * @return number of consists (including single stock)
+         */
+        public int size() {
+            return consists.size();
         }
 
+        public static Topology discover(Map<UUID, SimulationState> states) {
+            Topology topology = new Topology();
 
-        for (SimulationState state : states.values()) {
-            if (used.contains(state)) {
-                continue;
-            }
+            Set<SimulationState> used = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<SimulationState> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<UUID> ids = new ArrayList<>();
+            List<Boolean> directions = new ArrayList<>();
+
+            for (SimulationState state : states.values()) {
+                topology.links.put(state.config.id, new UUID[]{state.interactingFront, state.interactingRear});
+
+                if (used.contains(state)) {
+                    continue;
+                }
+
+                // Iterate all the way to one end of the consist
+
+                SimulationState current = state;
+                boolean direction = true;
+
+                visited.clear();
+                while (visited.add(current)) {
+                    // Find next
+                    UUID nextId = direction ? current.interactingFront : current.interactingRear;
+                    SimulationState next = nextId != null ? states.get(nextId) : null;
+                    if (next == null) {
+                        break;
+                    }
+
+                    // If next is flipped from our direction
+                    if (!current.config.id.equals(direction ? next.interactingRear : next.interactingFront)) {
+                        direction = !direction;
+                    }
+
+                    current = next;
+                }
 
-            // Iterate all the way to one end of the consist
+                // Current is now pointing at the head or the tail (does not matter which)
 
-            SimulationState current = state;
-            boolean direction = true;
+                // Invert iteration direction
+                direction = !direction;
+
+                // Build up the consist starting at the head or the tail
+                visited.clear();
+                ids.clear();
+                directions.clear();
+                while (visited.add(current)) {
+                    ids.add(current.config.id);
+                    directions.add(direction);
+
+                    // Find next
+                    UUID nextId = direction ? current.interactingFront : current.interactingRear;
+                    SimulationState next = nextId != null ? states.get(nextId) : null;
+                    if (next == null) {
+                        break;
+                    }
+
+                    // If next is flipped from our direction
+                    if (!current.config.id.equals(direction ? next.interactingRear : next.interactingFront)) {
+                        direction = !direction;
+                    }
 
-            List<SimulationState> visited = new ArrayList<>();
-            while (!visited.contains(current)) {
-                visited.add(current);
+                    current = next;
+                }
 
-                // Find next
-                UUID nextId = direction ? current.interactingFront : current.interactingRear;
-                SimulationState next = nextId != null ? states.get(nextId) : null;
-                if (next == null) {
-                    break;
+                boolean[] consistDirections = new boolean[directions.size()];
+                for (int i = 0; i < consistDirections.length; i++) {
+                    consistDirections[i] = directions.get(i);
                 }
+                topology.consists.add(ids.toArray(new UUID[0]));
+                topology.directions.add(consistDirections);
 
-                // If next is flipped from our direction
-                if (!current.config.id.equals(direction ? next.interactingRear : next.interactingFront)) {
-                    direction = !direction;
+                // Make sure we can't accidentally hook into any of the processed states from this consist
+                used.addAll(visited);
+            }
+            return topology;
+        }
+
+        /**
+         * @return true if the states have exactly the same stock and coupler links as when this was discovered
+         */
+        public boolean matches(Map<UUID, SimulationState> states) {
+            if (states.size() != links.size()) {
+                return false;
+            }
+            for (SimulationState state : states.values()) {
+                UUID[] link = links.get(state.config.id);
+                if (link == null || !Objects.equals(link[0], state.interactingFront) || !Objects.equals(link[1], state.interactingRear)) {
+                    return false;
                 }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param topology layout from the previous iteration, reused if the coupler links have not changed (may be null)
+     * @return the layout used for this iteration
+     */
+    public static Topology iterate(Map<UUID, SimulationState> states, Map<UUID, SimulationState> nextStateMap, Set<Vec3i> blocksAlreadyBroken, Topology topology) {
+        debug = false;
+        // ordered, one entry per consist that needs to be simulated
+        List<List<Particle>> simulated = new ArrayList<>();
 
-                current = next;
+        if (!states.isEmpty()) {
+            if (debug) {
+                System.out.println("=============BOUNDARY==========");
+                // This shows that the movement between consist simulations is not exact.
+                // Some instability can be seen between ticks as the couplers get slack introduced
             }
+        }
 
-            // Current is now pointing at the head or the tail (does not matter which)
+        if (topology == null || !topology.matches(states)) {
+            topology = Topology.discover(states);
+        }
 
-            // Invert iteration direction
-            direction = !direction;
+        for (int ci = 0; ci < topology.consists.size(); ci++) {
+            long consistStart = PhysicsProfiler.start();
+            UUID[] ids = topology.consists.get(ci);
+            boolean[] directions = topology.directions.get(ci);
 
-            List<Particle> consist = new ArrayList<>();
+            List<Particle> consist = new ArrayList<>(ids.length);
 
             Particle prevParticle = null;
 
-            // Build up the consist starting at the head or the tail
-            visited.clear();
-            while (!visited.contains(current)) {
-                visited.add(current);
-
+            for (int i = 0; i < ids.length; i++) {
                 // Create the new particle
-                Particle currParticle = new Particle(current, direction);
+                Particle currParticle = new Particle(states.get(ids[i]), directions[i]);
                 consist.add(currParticle);
 
                 // Link the two particles together
@@ -457,20 +547,6 @@ public class Consist {
                     currParticle.prevLink = link;
                 }
 
-                // Find next
-                UUID nextId = direction ? current.interactingFront : current.interactingRear;
-                SimulationState next = nextId != null ? states.get(nextId) : null;
-                if (next == null) {
-                    break;
-                }
-
-                // If next is flipped from our direction
-                if (!current.config.id.equals(direction ? next.interactingRear : next.interactingFront)) {
-                    direction = !direction;
-                }
-
-
-                current = next;
                 prevParticle = currParticle;
             }
 
@@ -541,7 +617,7 @@ public class Consist {
                 Simulation.restStates += consist.size();
             } else {
                 if (dirty || missingNextStates) {
-                    particles.addAll(consist);
+                    simulated.add(consist);
                     Simulation.calculatedStates += consist.size();
                 } else {
                     Simulation.keptStates += consist.size();
@@ -559,13 +635,78 @@ public class Consist {
                 );
                 consist.forEach(p -> p.state.consist = c);
             }
+            PhysicsProfiler.record(PhysicsProfiler.Section.ITERATE, consist.get(0).state, consistStart);
+        }
 
-            // Make sure we can't accidentally hook into any of the processed states from this consist
-            used.addAll(visited);
+        // At this point we should have ordered lists, particle -> next -> next, etc...
+
+        if (Config.ConfigPerformance.multithreadedPhysics && simulated.size() > 1) {
+            // Consists do not interact with each other within an iteration, so their forces can be spread
+            // independently.  Only that part runs on the pool: generating the states looks up track and blocks, which
+            // has to stay on the server thread, and is done in consist order so the broken blocks match a serial run
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<Particle> consist : simulated) {
+                futures.add(getPhysicsPool().submit(() -> spreadForces(consist)));
+            }
+
+            for (int i = 0; i < simulated.size(); i++) {
+                List<Particle> consist = simulated.get(i);
+                List<SimulationState> futureStates;
+                try {
+                    long start = PhysicsProfiler.start();
+                    futures.get(i).get();
+                    futureStates = generateStates(consist, blocksAlreadyBroken);
+                    // Waiting for the pool plus generating the states, time on the pool overlaps with other consists
+                    PhysicsProfiler.record(PhysicsProfiler.Section.ITERATE, consist.get(0).state, start);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    logStates(states, consist);
+                    throw new RuntimeException(e.getCause());
+                } catch (Exception ex) {
+                    logStates(states, consist);
+                    throw ex;
+                }
+                for (SimulationState future : futureStates) {
+                    nextStateMap.put(future.config.id, future);
+                }
+            }
+        } else {
+            for (List<Particle> consist : simulated) {
+                List<SimulationState> futureStates;
+                try {
+                    futureStates = integrate(consist, blocksAlreadyBroken);
+                } catch (Exception ex) {
+                    logStates(states, consist);
+                    throw ex;
+                }
+                for (SimulationState future : futureStates) {
+                    nextStateMap.put(future.config.id, future);
+                }
+            }
         }
 
-        // At this point we should have an ordered list, particle -> next -> next, etc...
+        return topology;
+    }
+
+    /**
+     * Spreads the forces over the given consist and generates the next state for each particle in it
+     * @param particles ordered particles of a single consist
+     */
+    private static List<SimulationState> integrate(List<Particle> particles, Set<Vec3i> blocksAlreadyBroken) {
+        long start = PhysicsProfiler.start();
+        spreadForces(particles);
+        List<SimulationState> states = generateStates(particles, blocksAlreadyBroken);
+        // Includes the track lookups, which are also recorded on their own
+        PhysicsProfiler.record(PhysicsProfiler.Section.ITERATE, particles.get(0).state, start);
+        return states;
+    }
 
+    /**
+     * Only touches the particles, safe to run off of the server thread
+     */
+    private static void spreadForces(List<Particle> particles) {
         double ticksPerSecond = 20;
         double stepsPerTick = 40;
         double dt_S = (1 / (ticksPerSecond * stepsPerTick));
@@ -604,22 +745,47 @@ public class Consist {
             particles.forEach(p -> p.applyFriction(dt_S));
             particles.forEach(p -> p.computePosition(dt_S));
         }
+    }
 
-        // Generate new states
-        try {
-            for (Particle particle : particles) {
-                nextStateMap.put(particle.state.config.id, particle.applyToState(blocksAlreadyBroken));
-            }
-        } catch (Exception ex) {
-            for (SimulationState state : states.values()) {
-                ImmersiveRailroading.debug("State: %s (%s, %s)", state.config.id, state.interactingFront, state.interactingRear);
-            }
-            for (Particle particle : particles) {
-                ImmersiveRailroading.debug("Particle: %s (%s, %s)", particle.state.config.id, particle.state.interactingFront, particle.state.interactingRear);
-            }
+    /**
+     * Moves the states along the track and checks for block collisions, server thread only
+     */
+    private static List<SimulationState> generateStates(List<Particle> particles, Set<Vec3i> blocksAlreadyBroken) {
+        List<SimulationState> futureStates = new ArrayList<>(particles.size());
+        for (Particle particle : particles) {
+            futureStates.add(particle.applyToState(blocksAlreadyBroken));
+        }
+        return futureStates;
+    }
+
+    private static void logStates(Map<UUID, SimulationState> states, List<Particle> particles) {
+        for (SimulationState state : states.values()) {
+            ImmersiveRailroading.debug("State: %s (%s, %s)", state.config.id, state.interactingFront, state.interactingRear);
+        }
+        for (Particle particle : particles) {
+            ImmersiveRailroading.debug("Particle: %s (%s, %s)", particle.state.config.id, particle.state.interactingFront, particle.state.interactingRear);
+        }
+    }
 
-            throw ex;
+    private static ExecutorService physicsPool;
+
+    private static synchronized ExecutorService getPhysicsPool() {
+        if (physicsPool == null) {
+            int threads = Config.ConfigPerformance.physicsThreads > 0 ?
+                    Config.ConfigPerformance.physicsThreads :
+                    Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            physicsPool = new ThreadPoolExecutor(threads, threads,
+                    5L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable);
+                        thread.setName("IR-Physics");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            ((ThreadPoolExecutor) physicsPool).allowCoreThreadTimeOut(true);
         }
+        return physicsPool;
     }
 
 
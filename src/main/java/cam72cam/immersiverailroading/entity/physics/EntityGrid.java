@@ -0,0 +1,94 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.entity.EntityMoveableRollingStock;
+import cam72cam.immersiverailroading.util.RealBB;
+import cam72cam.mod.entity.Entity;
+import cam72cam.mod.math.Vec3d;
+import cam72cam.mod.world.World;
+
+import java.util.*;
+
+/**
+ * Living entities (and players) bucketed into a coarse grid, rebuilt at most once per tick
+ *
+ * Moving stock used to scan every entity in the world for each of its collision checks.  Instead the world is scanned
+ * once per tick, the first time any stock asks, and every query only looks at the cells its bounds overlap.  Rolling
+ * stock and anything riding rolling stock is left out of the grid entirely.
+ */
+public class EntityGrid {
+    private static final Map<World, EntityGrid> grids = new HashMap<>();
+    private static final int cellBits = 3; // 8 blocks
+
+    private final World world;
+    private final Map<Long, List<Entity>> cells = new HashMap<>();
+    private long builtTick = -1;
+
+    private EntityGrid(World world) {
+        this.world = world;
+    }
+
+    public static EntityGrid get(World world) {
+        return grids.computeIfAbsent(world, EntityGrid::new);
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private static int cell(double coord) {
+        return (int) Math.floor(coord) >> cellBits;
+    }
+
+    private void build() {
+        long tick = world.getTicks();
+        if (tick == builtTick) {
+            return;
+        }
+        builtTick = tick;
+        cells.clear();
+
+        List<Entity> entities = world.getEntities((Entity entity) ->
+                (entity.isLiving() || entity.isPlayer()) &&
+                !(entity instanceof EntityMoveableRollingStock) &&
+                !(entity.getRiding() instanceof EntityMoveableRollingStock),
+                Entity.class);
+        for (Entity entity : entities) {
+            Vec3d min = entity.getBounds().min();
+            Vec3d max = entity.getBounds().max();
+            for (int cx = cell(min.x); cx <= cell(max.x); cx++) {
+                for (int cz = cell(min.z); cz <= cell(max.z); cz++) {
+                    cells.computeIfAbsent(cellKey(cx, cz), k -> new ArrayList<>()).add(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return living entities and players (not riding stock) which intersect the given bounds
+     */
+    public List<Entity> getIntersecting(RealBB bb) {
+        build();
+
+        Vec3d min = bb.min();
+        Vec3d max = bb.max();
+        List<Entity> found = new ArrayList<>();
+        // Entities can be in more than one cell
+        Set<Entity> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int cx = cell(min.x); cx <= cell(max.x); cx++) {
+            for (int cz = cell(min.z); cz <= cell(max.z); cz++) {
+                List<Entity> cell = cells.get(cellKey(cx, cz));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entity entity : cell) {
+                    // Chunk.getEntitiesOfTypeWithinAABB() does a reverse aabb intersect
+                    // We need to do a forward lookup
+                    if (seen.add(entity) && bb.intersects(entity.getBounds())) {
+                        found.add(entity);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
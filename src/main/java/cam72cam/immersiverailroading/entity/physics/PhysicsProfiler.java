@@ -0,0 +1,256 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.ImmersiveRailroading;
+import cam72cam.mod.math.Vec3d;
+import cam72cam.mod.world.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per consist timings of the simulation, kept over a rolling window of passes
+ *
+ * Disabled by default, in which case start() returns 0 and record() does nothing.  When enabled each section of a
+ * pass is attributed to the consist it was working on (or to the world for work that is not about a single consist,
+ * like the broadphase or sending packets).  Each consist is identified by the first stock in it.
+ */
+public class PhysicsProfiler {
+    public enum Section {
+        CHUNK_LOADING,
+        COUPLERS,
+        BROADPHASE,
+        ITERATE,
+        // Within ITERATE, not counted in the totals
+        TRACK,
+        PACKETS,
+    }
+
+    // Work which is not attributed to a single consist
+    public static final UUID WORLD = new UUID(0, 0);
+    private static final int sections = Section.values().length;
+    private static final Map<World, PhysicsProfiler> profilers = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled = false;
+    public static final int maxWindowPasses = 10000;
+    private static volatile int windowPasses = 100;
+
+    private static class Accumulator {
+        final AtomicLongArray nanos = new AtomicLongArray(sections);
+        volatile Vec3d position;
+    }
+
+    private static class Window {
+        // pass -> section -> nanos
+        final long[][] nanos;
+        int passes;
+        int lastPass;
+        Vec3d position;
+
+        Window(int size) {
+            nanos = new long[size][sections];
+        }
+    }
+
+    private final Map<UUID, Accumulator> current = new ConcurrentHashMap<>();
+    private final Map<UUID, Window> windows = new HashMap<>();
+    private int pass;
+
+    public static PhysicsProfiler get(World world) {
+        return profilers.computeIfAbsent(world, w -> new PhysicsProfiler());
+    }
+
+    /**
+     * @param passes size of the rolling window, clamped to 1..maxWindowPasses
+     */
+    public static void enable(int passes) {
+        windowPasses = Math.max(1, Math.min(maxWindowPasses, passes));
+        profilers.values().forEach(PhysicsProfiler::reset);
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+        profilers.values().forEach(PhysicsProfiler::reset);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return start time for record(), 0 if disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void record(Section section, SimulationState state, long start) {
+        if (start == 0) {
+            return;
+        }
+        UUID key = state.consist != null && state.consist.ids != null && !state.consist.ids.isEmpty() ?
+                state.consist.ids.get(0) : state.config.id;
+        get(state.config.world).add(section, key, state.position, System.nanoTime() - start);
+    }
+
+    public static void record(Section section, World world, long start) {
+        if (start == 0) {
+            return;
+        }
+        get(world).add(section, WORLD, null, System.nanoTime() - start);
+    }
+
+    private void add(Section section, UUID key, Vec3d position, long nanos) {
+        Accumulator accumulator = current.computeIfAbsent(key, k -> new Accumulator());
+        accumulator.nanos.addAndGet(section.ordinal(), nanos);
+        if (position != null) {
+            accumulator.position = position;
+        }
+    }
+
+    private synchronized void reset() {
+        current.clear();
+        windows.clear();
+        pass = 0;
+    }
+
+    /**
+     * Closes the current pass, called once per simulation pass on the server thread
+     */
+    public synchronized void endPass() {
+        if (!enabled) {
+            return;
+        }
+        int size = windowPasses;
+        pass++;
+        for (Map.Entry<UUID, Accumulator> entry : current.entrySet()) {
+            Window window = windows.computeIfAbsent(entry.getKey(), k -> new Window(size));
+            long[] row = window.nanos[window.passes % window.nanos.length];
+            for (int i = 0; i < sections; i++) {
+                row[i] = entry.getValue().nanos.get(i);
+            }
+            window.passes++;
+            window.lastPass = pass;
+            if (entry.getValue().position != null) {
+                window.position = entry.getValue().position;
+            }
+        }
+        current.clear();
+
+        // Consists which have not been simulated for a whole window have been unloaded/split/merged
+        windows.values().removeIf(window -> pass - window.lastPass >= window.nanos.length);
+
+        if (pass % size == 0) {
+            for (String line : report(5)) {
+                ImmersiveRailroading.info("Physics profile: %s", line);
+            }
+        }
+    }
+
+    /**
+     * Throws away the current pass (benchmark passes)
+     */
+    public void discardPass() {
+        current.clear();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))];
+    }
+
+    private static long[] sorted(Window window, int section) {
+        int count = Math.min(window.passes, window.nanos.length);
+        long[] values = new long[count];
+        for (int p = 0; p < count; p++) {
+            if (section < 0) {
+                for (int i = 0; i < sections; i++) {
+                    if (i != Section.TRACK.ordinal()) {
+                        values[p] += window.nanos[p][i];
+                    }
+                }
+            } else {
+                values[p] = window.nanos[p][section];
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static String describe(UUID key, Window window) {
+        if (key.equals(WORLD)) {
+            return "world";
+        }
+        if (window.position == null) {
+            return key.toString();
+        }
+        return String.format("%s @ chunk %s,%s", key, (int) Math.floor(window.position.x) >> 4, (int) Math.floor(window.position.z) >> 4);
+    }
+
+    /**
+     * @return the most expensive consists (by p95 total time per pass), with per section p50/p95 in ms
+     */
+    public synchronized List<String> report(int limit) {
+        List<Map.Entry<UUID, Window>> entries = new ArrayList<>(windows.entrySet());
+        Map<UUID, Long> totals = new HashMap<>();
+        for (Map.Entry<UUID, Window> entry : entries) {
+            totals.put(entry.getKey(), percentile(sorted(entry.getValue(), -1), 0.95));
+        }
+        entries.sort(Comparator.comparing((Map.Entry<UUID, Window> e) -> totals.get(e.getKey())).reversed());
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%s consists over the last %s passes (p50/p95 ms per pass)", windows.size(), Math.min(pass, windowPasses)));
+        for (Map.Entry<UUID, Window> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            Window window = entry.getValue();
+            StringBuilder line = new StringBuilder(describe(entry.getKey(), window));
+            long[] total = sorted(window, -1);
+            line.append(String.format(" total %.3f/%.3f", percentile(total, 0.5) / 1000000.0, percentile(total, 0.95) / 1000000.0));
+            for (Section section : Section.values()) {
+                long[] values = sorted(window, section.ordinal());
+                if (values[values.length - 1] == 0) {
+                    continue;
+                }
+                line.append(String.format(", %s %.3f/%.3f", section.name().toLowerCase(Locale.ROOT),
+                        percentile(values, 0.5) / 1000000.0, percentile(values, 0.95) / 1000000.0));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Writes every pass in the window, one row per consist per pass
+     */
+    public synchronized File dump() throws IOException {
+        File file = new File("logs", "immersiverailroading_physics.csv");
+        file.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            StringBuilder header = new StringBuilder("consist,chunk_x,chunk_z,pass");
+            for (Section section : Section.values()) {
+                header.append(',').append(section.name().toLowerCase(Locale.ROOT)).append("_ns");
+            }
+            writer.println(header);
+
+            for (Map.Entry<UUID, Window> entry : windows.entrySet()) {
+                Window window = entry.getValue();
+                int count = Math.min(window.passes, window.nanos.length);
+                String chunkX = window.position == null ? "" : String.valueOf((int) Math.floor(window.position.x) >> 4);
+                String chunkZ = window.position == null ? "" : String.valueOf((int) Math.floor(window.position.z) >> 4);
+                for (int p = 0; p < count; p++) {
+                    // Oldest first
+                    int slot = (window.passes - count + p) % window.nanos.length;
+                    StringBuilder row = new StringBuilder();
+                    row.append(entry.getKey()).append(',').append(chunkX).append(',').append(chunkZ).append(',').append(p);
+                    for (long nanos : window.nanos[slot]) {
+                        row.append(',').append(nanos);
+                    }
+                    writer.println(row);
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -5,15 +5,14 @@ import cam72cam.immersiverailroading.ImmersiveRailroading;
 import cam72cam.immersiverailroading.entity.EntityCoupleableRollingStock;
 import cam72cam.immersiverailroading.entity.physics.chrono.ChronoState;
 import cam72cam.immersiverailroading.entity.physics.chrono.ServerChronoState;
-import cam72cam.immersiverailroading.net.MRSSyncPacket;
-import cam72cam.immersiverailroading.physics.TickPos;
+import cam72cam.immersiverailroading.library.Gauge;
+import cam72cam.immersiverailroading.physics.MovementTrack;
 import cam72cam.mod.entity.Player;
 import cam72cam.mod.math.Vec3d;
 import cam72cam.mod.math.Vec3i;
 import cam72cam.mod.world.World;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Simulation {
 
@@ -21,52 +20,117 @@ public class Simulation {
     public static int calculatedStates;
     public static int restStates;
     public static int keptStates;
+    public static int candidatePairs;
+    public static long iterateNanos;
+    public static int consistIterations;
 
     double maxCouplerDist = 4;
+    // Size of the coupling/collision broadphase cells (blocks)
+    static final int broadphaseCellSize = 16;
+    // Resting stock re-reads its configuration every N passes in case something changed without marking it active
+    static final int restingRevalidatePasses = 20;
 
     private final World world;
+    private final boolean live;
     private final int startTickID;
     List<Map<UUID, SimulationState>> stateMaps;
-    private final List<Vec3i> blocksAlreadyBroken;
+    private final Set<Vec3i> blocksAlreadyBroken;
+    private final StockIndex index;
+    // Consist layout, reused between iterations until a coupler link changes
+    private Consist.Topology topology;
     List<EntityCoupleableRollingStock> loaded;
 
 
     public Simulation(World world) {
-        calculatedStates = keptStates = restStates = 0;
+        this(world, true);
+    }
+
+    /**
+     * @param live false to simulate copies of the states and throw the results away (benchmark passes)
+     */
+    Simulation(World world, boolean live) {
+        calculatedStates = keptStates = restStates = candidatePairs = consistIterations = 0;
+        iterateNanos = 0;
         long startTimeMs = System.currentTimeMillis();
         this.world = world;
+        this.live = live;
         this.startTickID = ((ServerChronoState)ChronoState.getState(world)).getServerTickID();
+        this.index = StockIndex.get(world);
+        index.prune();
 
         stateMaps = new ArrayList<>();
-        blocksAlreadyBroken = new ArrayList<>();
+        blocksAlreadyBroken = new HashSet<>();
 
         for (int i = 0; i < Config.ConfigDebug.physicsFutureTicks; i++) {
             stateMaps.add(new HashMap<>());
         }
 
-        for (int i = 0; i < stateMaps.size()-1; i++) {
-            simulateTick(i);
+        MovementTrack.startTrackCache(world);
+        SimulationState.startBlockCache(world);
+        try {
+            for (int i = 0; i < stateMaps.size()-1; i++) {
+                simulateTick(i);
+            }
+
+            if (live) {
+                // Load whatever the trains are about to run into now instead of during the next pass
+                // Still inside the track cache, the path probes mostly hit the rails the pass just looked up
+                long preloadStart = PhysicsProfiler.start();
+                ChunkPreloader.get(world).update(stateMaps.get(stateMaps.size() - 1).values());
+                PhysicsProfiler.record(PhysicsProfiler.Section.CHUNK_LOADING, world, preloadStart);
+            }
+        } finally {
+            SimulationState.stopBlockCache(world);
+            MovementTrack.stopTrackCache(world);
+        }
+
+        if (!live) {
+            // Nothing is applied, the stock (and the blocks it would break) are left as they were
+            PhysicsProfiler.get(world).discardPass();
+            return;
         }
 
         boolean sendPackets = world.getTicks() % (Config.ConfigDebug.physicsFutureTicks / 2) == 0;
-        double syncDistanceSq = ImmersiveRailroading.ENTITY_SYNC_DISTANCE * ImmersiveRailroading.ENTITY_SYNC_DISTANCE;
-        List<Player> players = sendPackets ? world.getEntities(Player.class) : null;
 
         // Apply new states
+        StateBuffer buffer = StateBuffer.get(world);
         for (EntityCoupleableRollingStock stock : loaded) {
-            stock.states = stateMaps.stream().map(m -> m.get(stock.getUUID())).filter(Objects::nonNull).collect(Collectors.toList());
+            List<SimulationState> states = new ArrayList<>(stateMaps.size());
+            for (Map<UUID, SimulationState> stateMap : stateMaps) {
+                SimulationState state = stateMap.get(stock.getUUID());
+                if (state != null) {
+                    states.add(state);
+                }
+            }
+            stock.states = states;
+            // The last state has not been through Consist.iterate yet, so its atRest flag is meaningless
+            boolean resting = !stock.states.isEmpty();
+            for (int i = 0; i < stock.states.size() - 1; i++) {
+                SimulationState state = stock.states.get(i);
+                resting = resting && state.atRest && !state.dirty;
+            }
+            if (resting) {
+                index.markResting(stock);
+            } else {
+                index.markActive(stock);
+            }
             for (SimulationState state : stock.states) {
                 state.dirty = false;
             }
-            stock.positions = stock.states.stream().map(TickPos::new).collect(Collectors.toList());
-            if (sendPackets && players.stream().anyMatch(player -> player.getPosition().distanceToSquared(stock.getPosition()) < syncDistanceSq)) {
-                new MRSSyncPacket(stock, stock.positions).sendToObserving(stock);
-            }
+            // TickPos are only built from the buffer when the stock is synced or saved
+            buffer.write(stock.getUUID(), stock.states);
+        }
+        buffer.retain(index);
+
+        if (sendPackets) {
+            StockSync.get(world).send(world.getEntities(Player.class), index, buffer, startTickID);
         }
 
+        PhysicsProfiler.get(world).endPass();
+
         long totalTimeMs = System.currentTimeMillis() - startTimeMs;
         if (totalTimeMs > Config.ConfigDebug.physicsWarnTotalThresholdMs) {
-            ImmersiveRailroading.warn("Calculating Immersive Railroading Physics took %sms (%s, %s, %s)", totalTimeMs, calculatedStates, restStates, keptStates);
+            ImmersiveRailroading.warn("Calculating Immersive Railroading Physics took %sms (%s, %s, %s, %s)", totalTimeMs, calculatedStates, restStates, keptStates, candidatePairs);
         }
     }
 
@@ -80,19 +144,28 @@ public class Simulation {
 
         // Should really only ever run once, maybe twice.  Cut it off after 10 times just to be safe
         for (int tryLoad = 0; tryLoad < 10; tryLoad++) {
-            // If this is too slow, we could hang onto the list of stock that is at rest.
-            // We should only need to do this when stock is no longer at rest or changes dirty flag
+            // Stock joins the index as its chunk loads, so this picks up anything loaded below
             int lastCount = loaded == null ? 0 : loaded.size();
-            loaded = world.getEntities(EntityCoupleableRollingStock.class);
+            loaded = index.getLoaded();
             boolean newChunksLoaded = lastCount != loaded.size();
 
             for (EntityCoupleableRollingStock stock : loaded) {
 
                 if (!stateMap.containsKey(stock.getUUID())) {
+                    // Resting stock has not been touched since the last pass, no need to rebuild its configuration
+                    boolean revalidate = !index.isResting(stock) ||
+                            Math.floorMod(startTickID / 5 + stock.getUUID().hashCode(), restingRevalidatePasses) == 0;
                     for (SimulationState state : stock.states) {
                         int stateIteration = state.tickID - tickID;
                         if (stateIteration >= 0) {
-                            state.update(stock);
+                            if (!live) {
+                                // Fully re-simulated, without touching the states the stock is actually using
+                                state = state.copy();
+                                state.dirty = true;
+                            }
+                            if (revalidate) {
+                                state.update(stock);
+                            }
                             stateMaps.get(stateIteration).put(stock.getUUID(), state);
                         }
                     }
@@ -113,10 +186,12 @@ public class Simulation {
                     continue;
                 }
 
+                long chunkStart = PhysicsProfiler.start();
                 // Keep it loaded
                 world.keepLoaded(new Vec3i(state.position));
 
                 if (state.consist.positions == null) {
+                    PhysicsProfiler.record(PhysicsProfiler.Section.CHUNK_LOADING, state, chunkStart);
                     continue;
                 }
 
@@ -130,6 +205,7 @@ public class Simulation {
                         newChunksLoaded = true;
                     }
                 }
+                PhysicsProfiler.record(PhysicsProfiler.Section.CHUNK_LOADING, state, chunkStart);
             }
             if (!newChunksLoaded) {
                 break;
@@ -154,6 +230,7 @@ public class Simulation {
 
         // Decouple / fix coupler positions
         for (SimulationState state : states) {
+            long couplerStart = PhysicsProfiler.start();
             for (boolean isMyCouplerFront : new boolean[]{true, false}) {
                 UUID myID = state.config.id;
                 UUID otherID = isMyCouplerFront ? state.interactingFront : state.interactingRear;
@@ -166,9 +243,8 @@ public class Simulation {
                 }
                 SimulationState other = stateMap.get(otherID);
                 if (other == null) {
-                    Vec3i otherPos = loaded.stream()
-                            .filter(x -> x.getUUID().equals(myID)).findFirst()
-                            .map(x -> isMyCouplerFront ? x.lastKnownFront : x.lastKnownRear).orElse(null);
+                    EntityCoupleableRollingStock self = index.get(myID);
+                    Vec3i otherPos = self == null ? null : isMyCouplerFront ? self.lastKnownFront : self.lastKnownRear;
 
                     if (otherPos != null && !world.isBlockLoaded(otherPos)) {
                         // Other location is not loaded, we must not need to do this check.
@@ -241,117 +317,117 @@ public class Simulation {
                     }
                 }
             }
+            PhysicsProfiler.record(PhysicsProfiler.Section.COUPLERS, state, couplerStart);
         }
 
 
         // check for potential couplings and collisions
-        for (int sai = 0; sai < states.size()-1; sai++) {
-            SimulationState stateA = states.get(sai);
-            if (stateA.interactingFront != null && stateA.interactingRear != null) {
-                // There's stock in front and behind, can't really hit any other stock here
+        long broadphaseStart = PhysicsProfiler.start();
+        long[] pairs = broadphase(states);
+        PhysicsProfiler.record(PhysicsProfiler.Section.BROADPHASE, world, broadphaseStart);
+        for (long pair : pairs) {
+            SimulationState stateA = states.get((int) (pair >>> 32));
+            SimulationState stateB = states.get((int) pair);
+            candidatePairs++;
+
+            if (stateA.interactingFront != null && stateA.interactingRear != null ||
+                    stateB.interactingFront != null && stateB.interactingRear != null) {
+                // Coupled up earlier in this pass, can't really hit any other stock here
                 continue;
             }
 
-            for (int sbi = sai+1; sbi < states.size(); sbi++) {
-                SimulationState stateB = states.get(sbi);
-                if (stateA.atRest && stateB.atRest && !stateA.dirty && !stateB.dirty) {
-                    continue;
-                }
-                if (stateB.interactingFront != null && stateB.interactingRear != null) {
-                    // There's stock in front and behind, can't really hit any other stock here
-                    continue;
-                }
-
-                if (stateA.config.gauge != stateB.config.gauge) {
-                    // Same gauge required
-                    continue;
-                }
-
-                double centerDist = stateA.config.length + stateB.config.length;
-                if (stateA.position.distanceToSquared(stateB.position) > centerDist * centerDist) {
-                    // Too far to reasonably couple
-                    continue;
-                }
+            if (stateA.config.gauge != stateB.config.gauge) {
+                // Same gauge required
+                continue;
+            }
 
-                if (!stateA.bounds.intersects(stateB.bounds)) {
-                    // Not close enough to couple
-                    continue;
-                }
+            double centerDist = stateA.config.length + stateB.config.length;
+            if (stateA.position.distanceToSquared(stateB.position) > centerDist * centerDist) {
+                // Too far to reasonably couple
+                continue;
+            }
 
-                if (stateB.config.id.equals(stateA.interactingFront) || stateB.config.id.equals(stateA.interactingRear)) {
-                    // Already coupled
-                    continue;
-                }
-                if (stateA.config.id.equals(stateB.interactingFront) || stateA.config.id.equals(stateB.interactingRear)) {
-                    // Already coupled (double safe check)
-                    continue;
-                }
+            if (!stateA.bounds.intersects(stateB.bounds)) {
+                // Not close enough to couple
+                continue;
+            }
 
-                // At this point the stock are colliding / overlapping and we need to do something about it
-
-                /*
-                 * 1. |-----a-----| |-----b-----|
-                 * 2. |-----a---|=|----b-----|
-                 * 3. |---|=a====b|-----|
-                 * Keep in mind that we want to make sure that our other coupler might be a better fit
-                 */
-
-                // the coupler to target is whichever one the other's center is closest to
-                boolean targetACouplerFront =
-                        stateA.couplerPositionFront.distanceToSquared(stateB.position) <
-                                stateA.couplerPositionRear.distanceToSquared(stateB.position);
-                boolean targetBCouplerFront =
-                        stateB.couplerPositionFront.distanceToSquared(stateA.position) <
-                                stateB.couplerPositionRear.distanceToSquared(stateA.position);
-
-                // Best coupler is already coupled to something
-                if ((targetACouplerFront ? stateA.interactingFront : stateA.interactingRear) != null) {
-                    continue;
-                }
-                if ((targetBCouplerFront ? stateB.interactingFront : stateB.interactingRear) != null) {
-                    continue;
-                }
+            if (stateB.config.id.equals(stateA.interactingFront) || stateB.config.id.equals(stateA.interactingRear)) {
+                // Already coupled
+                continue;
+            }
+            if (stateA.config.id.equals(stateB.interactingFront) || stateA.config.id.equals(stateB.interactingRear)) {
+                // Already coupled (double safe check)
+                continue;
+            }
 
-                // Since bounding boxes can overlap across different tracks (think parallel curves) we need to do
-                // a more fine-grained check here
-                Vec3d couplerPosA = targetACouplerFront ? stateA.couplerPositionFront : stateA.couplerPositionRear;
-                Vec3d couplerPosB = targetBCouplerFront ? stateB.couplerPositionFront : stateB.couplerPositionRear;
-                // Move coupler pos up to inside the BB (it's at track level by default)
-                // This could be optimized further, but it's an infrequent calculation
-                couplerPosA = couplerPosA.add(0, stateB.bounds.max().subtract(stateB.bounds.min()).y/2, 0);
-                couplerPosB = couplerPosB.add(0, stateA.bounds.max().subtract(stateA.bounds.min()).y/2, 0);
-                if (!stateB.bounds.contains(couplerPosA) || !stateA.bounds.contains(couplerPosB)) {
-                    // Not actually on the same track, just a BB collision and can be ignored
-                    continue;
-                }
+            // At this point the stock are colliding / overlapping and we need to do something about it
+
+            /*
+             * 1. |-----a-----| |-----b-----|
+             * 2. |-----a---|=|----b-----|
+             * 3. |---|=a====b|-----|
+             * Keep in mind that we want to make sure that our other coupler might be a better fit
+             */
+
+            // the coupler to target is whichever one the other's center is closest to
+            boolean targetACouplerFront =
+                    stateA.couplerPositionFront.distanceToSquared(stateB.position) <
+                            stateA.couplerPositionRear.distanceToSquared(stateB.position);
+            boolean targetBCouplerFront =
+                    stateB.couplerPositionFront.distanceToSquared(stateA.position) <
+                            stateB.couplerPositionRear.distanceToSquared(stateA.position);
+
+            // Best coupler is already coupled to something
+            if ((targetACouplerFront ? stateA.interactingFront : stateA.interactingRear) != null) {
+                continue;
+            }
+            if ((targetBCouplerFront ? stateB.interactingFront : stateB.interactingRear) != null) {
+                continue;
+            }
 
-                stateA.dirty = true;
-                stateB.dirty = true;
-                ImmersiveRailroading.debug("%s-%s: Coupling %s (%s) to %s (%s)",
-                        startTickID, stateA.tickID,
-                        stateA.config.id, targetACouplerFront ? "Front" : "Rear",
-                        stateB.config.id, targetBCouplerFront ? "Front" : "Rear");
+            // Since bounding boxes can overlap across different tracks (think parallel curves) we need to do
+            // a more fine-grained check here
+            Vec3d couplerPosA = targetACouplerFront ? stateA.couplerPositionFront : stateA.couplerPositionRear;
+            Vec3d couplerPosB = targetBCouplerFront ? stateB.couplerPositionFront : stateB.couplerPositionRear;
+            // Move coupler pos up to inside the BB (it's at track level by default)
+            // This could be optimized further, but it's an infrequent calculation
+            couplerPosA = couplerPosA.add(0, stateB.bounds.max().subtract(stateB.bounds.min()).y/2, 0);
+            couplerPosB = couplerPosB.add(0, stateA.bounds.max().subtract(stateA.bounds.min()).y/2, 0);
+            if (!stateB.bounds.contains(couplerPosA) || !stateA.bounds.contains(couplerPosB)) {
+                // Not actually on the same track, just a BB collision and can be ignored
+                continue;
+            }
 
-                // Ok, we are clear to proceed!
-                if (targetACouplerFront) {
-                    stateA.interactingFront = stateB.config.id;
-                } else {
-                    stateA.interactingRear = stateB.config.id;
-                }
-                if (targetBCouplerFront) {
-                    stateB.interactingFront = stateA.config.id;
-                } else {
-                    stateB.interactingRear = stateA.config.id;
-                }
+            stateA.dirty = true;
+            stateB.dirty = true;
+            ImmersiveRailroading.debug("%s-%s: Coupling %s (%s) to %s (%s)",
+                    startTickID, stateA.tickID,
+                    stateA.config.id, targetACouplerFront ? "Front" : "Rear",
+                    stateB.config.id, targetBCouplerFront ? "Front" : "Rear");
+
+            // Ok, we are clear to proceed!
+            if (targetACouplerFront) {
+                stateA.interactingFront = stateB.config.id;
+            } else {
+                stateA.interactingRear = stateB.config.id;
+            }
+            if (targetBCouplerFront) {
+                stateB.interactingFront = stateA.config.id;
+            } else {
+                stateB.interactingRear = stateA.config.id;
             }
         }
 
         // calculate new velocities
-        Consist.iterate(stateMap, nextStateMap, blocksAlreadyBroken);
+        long iterateStart = System.nanoTime();
+        topology = Consist.iterate(stateMap, nextStateMap, blocksAlreadyBroken, topology);
+        iterateNanos += System.nanoTime() - iterateStart;
+        consistIterations += topology.size();
 
         long totalTimeMs = System.currentTimeMillis() - startTimeMs;
         if (totalTimeMs > Config.ConfigDebug.physicsWarnThresholdMs) {
-            ImmersiveRailroading.warn("Calculating Immersive Railroading Physics Iteration took %sms (%s, %s, %s)", totalTimeMs, calculatedStates, restStates, keptStates);
+            ImmersiveRailroading.warn("Calculating Immersive Railroading Physics Iteration took %sms (%s, %s, %s, %s)", totalTimeMs, calculatedStates, restStates, keptStates, candidatePairs);
         }
     }
 
@@ -360,6 +436,75 @@ public class Simulation {
 
 
 
+    /**
+     * Buckets the states by gauge into a coarse grid based on their bounds.  Only states which share a cell can
+     * possibly have intersecting bounds, so only those pairs need to be checked for couplings/collisions.
+     *
+     * @return index pairs (a << 32 | b, a < b) into states, in the same order the full pairwise scan would visit them
+     */
+    private static long[] broadphase(List<SimulationState> states) {
+        Map<Gauge, Map<Long, List<Integer>>> grid = new HashMap<>();
+        int[][] cells = new int[states.size()][];
+
+        for (int i = 0; i < states.size(); i++) {
+            SimulationState state = states.get(i);
+            if (state.interactingFront != null && state.interactingRear != null) {
+                // There's stock in front and behind, can't really hit any other stock here
+                continue;
+            }
+
+            Vec3d min = state.bounds.min();
+            Vec3d max = state.bounds.max();
+            int[] cell = cells[i] = new int[] {
+                    (int) Math.floor(min.x / broadphaseCellSize),
+                    (int) Math.floor(min.z / broadphaseCellSize),
+                    (int) Math.floor(max.x / broadphaseCellSize),
+                    (int) Math.floor(max.z / broadphaseCellSize),
+            };
+
+            Map<Long, List<Integer>> gaugeGrid = grid.computeIfAbsent(state.config.gauge, g -> new HashMap<>());
+            for (int x = cell[0]; x <= cell[2]; x++) {
+                for (int z = cell[1]; z <= cell[3]; z++) {
+                    gaugeGrid.computeIfAbsent(((long) x << 32) | (z & 0xFFFFFFFFL), k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+
+        long[] pairs = new long[16];
+        int pairCount = 0;
+        for (Map<Long, List<Integer>> gaugeGrid : grid.values()) {
+            for (Map.Entry<Long, List<Integer>> entry : gaugeGrid.entrySet()) {
+                int x = (int) (entry.getKey() >> 32);
+                int z = (int) entry.getKey().longValue();
+                List<Integer> bucket = entry.getValue();
+                for (int ai = 0; ai < bucket.size() - 1; ai++) {
+                    int a = bucket.get(ai);
+                    SimulationState stateA = states.get(a);
+                    for (int bi = ai + 1; bi < bucket.size(); bi++) {
+                        int b = bucket.get(bi);
+                        SimulationState stateB = states.get(b);
+                        if (stateA.atRest && stateB.atRest && !stateA.dirty && !stateB.dirty) {
+                            continue;
+                        }
+                        // Only emit the pair from the first cell both states share, otherwise it would be duplicated
+                        if (x != Math.max(cells[a][0], cells[b][0]) || z != Math.max(cells[a][1], cells[b][1])) {
+                            continue;
+                        }
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                        // Buckets are filled in index order, so a < b
+                        pairs[pairCount++] = ((long) a << 32) | b;
+                    }
+                }
+            }
+        }
+
+        pairs = Arrays.copyOf(pairs, pairCount);
+        Arrays.sort(pairs);
+        return pairs;
+    }
+
     public static void simulate(World world) {
         // 100KM/h ~= 28m/s which means non-loaded stationary stock may be phased through at that speed
         // I'm OK with that for now
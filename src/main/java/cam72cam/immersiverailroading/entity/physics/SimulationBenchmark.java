@@ -0,0 +1,74 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.mod.world.World;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs back to back simulation passes against the stock loaded in a world and reports how long they took
+ *
+ * Each pass re-simulates every future tick of every loaded stock from dirty copies of its states, and the results are
+ * thrown away instead of being applied or synced, so the stock, its resting flags and the blocks it would break are
+ * left untouched.  Meant to be run on a test world with a known layout so the numbers can be compared between
+ * releases.
+ */
+public class SimulationBenchmark {
+    private static final int warmupPasses = 5;
+    public static final int maxPasses = 1000;
+
+    /**
+     * @param passes clamped to 1..maxPasses
+     */
+    public static List<String> run(World world, int passes) {
+        passes = Math.max(1, Math.min(maxPasses, passes));
+        for (int i = 0; i < warmupPasses; i++) {
+            new Simulation(world, false);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        // Only available on HotSpot, and only counts the server thread (not the physics pool)
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported() ?
+                (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+
+        long[] passNanos = new long[passes];
+        long iterateNanos = 0;
+        long consistIterations = 0;
+        long states = 0;
+        long calculated = 0;
+        long allocatedStart = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+
+        for (int i = 0; i < passes; i++) {
+            long start = System.nanoTime();
+            new Simulation(world, false);
+            passNanos[i] = System.nanoTime() - start;
+
+            iterateNanos += Simulation.iterateNanos;
+            consistIterations += Simulation.consistIterations;
+            states += Simulation.calculatedStates + Simulation.restStates + Simulation.keptStates;
+            calculated += Simulation.calculatedStates;
+        }
+
+        long allocated = allocations != null ? allocations.getThreadAllocatedBytes(threadId) - allocatedStart : -1;
+
+        Arrays.sort(passNanos);
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%s passes, %s stock, %s states/pass (%s calculated)", passes, StockIndex.get(world).getLoaded().size(), states / passes, calculated / passes));
+        lines.add(String.format("Pass: min %.3fms, p50 %.3fms, p95 %.3fms, max %.3fms",
+                passNanos[0] / 1000000.0,
+                passNanos[passes / 2] / 1000000.0,
+                passNanos[Math.min(passes - 1, (int) (passes * 0.95))] / 1000000.0,
+                passNanos[passes - 1] / 1000000.0));
+        lines.add(String.format("Consist.iterate: %sns/consist-iteration (%s consist-iterations/pass)",
+                consistIterations > 0 ? iterateNanos / consistIterations : 0, consistIterations / passes));
+        lines.add(allocated >= 0 ?
+                String.format("Allocated: %.1fKB/pass", allocated / 1024.0 / passes) :
+                "Allocated: not supported by this JVM");
+        return lines;
+    }
+}
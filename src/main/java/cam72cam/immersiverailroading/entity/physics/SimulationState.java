@@ -12,7 +12,6 @@ import cam72cam.immersiverailroading.physics.MovementTrack;
 import cam72cam.immersiverailroading.thirdparty.trackapi.ITrack;
 import cam72cam.immersiverailroading.tile.TileRailBase;
 import cam72cam.immersiverailroading.util.BlockUtil;
-import cam72cam.immersiverailroading.util.Speed;
 import cam72cam.immersiverailroading.util.VecUtil;
 import cam72cam.mod.entity.boundingbox.IBoundingBox;
 import cam72cam.mod.math.Vec3d;
@@ -22,9 +21,14 @@ import cam72cam.mod.util.FastMath;
 import cam72cam.mod.world.World;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 public class SimulationState {
+    // Per simulation pass block classification (rail or hardness), shared by all stock in the pass (see Simulation)
+    private static final Map<World, Map<Vec3i, Double>> blockCaches = new ConcurrentHashMap<>();
+    private static final double RAIL = Double.NEGATIVE_INFINITY;
+
     public int tickID;
 
     public Vec3d position;
@@ -100,7 +104,7 @@ public class SimulationState {
 
         // We don't actually want to use this value, it's only for dirty checking
         private double tractiveEffortFactors;
-        private Function<Speed, Double> tractiveEffortNewtons;
+        private TractiveEffortTable tractiveEffort;
 
         public Double desiredBrakePressure;
         public double independentBrakePosition;
@@ -138,11 +142,11 @@ public class SimulationState {
 
             if (stock instanceof Locomotive) {
                 Locomotive locomotive = (Locomotive) stock;
-                tractiveEffortNewtons = locomotive::getTractiveEffortNewtons;
+                tractiveEffort = new TractiveEffortTable(locomotive);
                 tractiveEffortFactors = locomotive.getThrottle() + (locomotive.getReverser() * 10);
                 desiredBrakePressure = (double)locomotive.getTrainBrake();
             } else {
-                tractiveEffortNewtons = speed -> 0d;
+                tractiveEffort = null;
                 tractiveEffortFactors = 0;
                 desiredBrakePressure = null;
             }
@@ -172,8 +176,8 @@ public class SimulationState {
             return false;
         }
 
-        public double tractiveEffortNewtons(Speed speed) {
-            return this.tractiveEffortNewtons.apply(speed);
+        public double tractiveEffortNewtons(double speedMinecraft) {
+            return tractiveEffort == null ? 0 : tractiveEffort.newtons(speedMinecraft);
         }
     }
 
@@ -201,7 +205,7 @@ public class SimulationState {
 
         calculateCouplerPositions();
 
-        calculateBlockCollisions(Collections.emptyList());
+        calculateBlockCollisions(Collections.emptySet());
         blocksToBreak = Collections.emptyList();
 
         consist = stock.consist;
@@ -245,6 +249,24 @@ public class SimulationState {
         consist = prev.consist;
     }
 
+    /**
+     * Independent copy of this state, for passes which must not change the stock (see SimulationBenchmark)
+     */
+    public SimulationState copy() {
+        SimulationState copy = new SimulationState(this);
+        copy.tickID = tickID;
+        copy.blocksToBreak = blocksToBreak;
+        copy.dirty = dirty;
+        copy.atRest = atRest;
+        copy.collided = collided;
+        copy.sliding = sliding;
+        copy.frontPushing = frontPushing;
+        copy.frontPulling = frontPulling;
+        copy.rearPushing = rearPushing;
+        copy.rearPulling = rearPulling;
+        return copy;
+    }
+
     public void calculateCouplerPositions() {
         Vec3d bogeyFront = VecUtil.fromWrongYawPitch(config.offsetFront, yaw, pitch);
         Vec3d bogeyRear = VecUtil.fromWrongYawPitch(config.offsetRear, yaw, pitch);
@@ -272,7 +294,34 @@ public class SimulationState {
         }
     }
 
-    public void calculateBlockCollisions(List<Vec3i> blocksAlreadyBroken) {
+    public static void startBlockCache(World world) {
+        blockCaches.put(world, new ConcurrentHashMap<>());
+    }
+
+    public static void stopBlockCache(World world) {
+        blockCaches.remove(world);
+    }
+
+    /**
+     * @return RAIL for IR rails, otherwise the block hardness
+     */
+    private static double classifyBlock(World world, Vec3i pos, Map<Vec3i, Double> cache) {
+        if (cache == null) {
+            return BlockUtil.isIRRail(world, pos) ? RAIL : world.getBlockHardness(pos);
+        }
+        // Plain get first, computeIfAbsent locks the bin even when the block is already there
+        Double hardness = cache.get(pos);
+        if (hardness == null) {
+            hardness = cache.computeIfAbsent(pos, p -> BlockUtil.isIRRail(world, p) ? RAIL : (double) world.getBlockHardness(p));
+        }
+        return hardness;
+    }
+
+    public void calculateBlockCollisions(Set<Vec3i> blocksAlreadyBroken) {
+        // Every block in the bounds is still listed by blocksInBounds, but neighboring stock and previous ticks cover
+        // mostly the same blocks so the rail check and hardness of most of them come from the pass cache
+        Map<Vec3i, Double> cache = blockCaches.get(config.world);
+
         this.collidingBlocks = config.world.blocksInBounds(this.bounds);
         this.trackToUpdate = new ArrayList<>();
         this.interferingBlocks = new ArrayList<>();
@@ -283,14 +332,14 @@ public class SimulationState {
                 continue;
             }
 
-            if (BlockUtil.isIRRail(config.world, bp)) {
+            double hardness = classifyBlock(config.world, bp, cache);
+            if (hardness == RAIL) {
                 trackToUpdate.add(bp);
-            } else {
-                if (Config.ConfigDamage.TrainsBreakBlocks && !BlockUtil.isIRRail(config.world, bp.up())) {
-                    if (bp.y >= position.y - (position.y % 1)) { // Prevent it from breaking blocks under the pitched train (bb expanded)
-                        interferingBlocks.add(bp);
-                        interferingResistance += config.world.getBlockHardness(bp);
-                    }
+            } else if (Config.ConfigDamage.TrainsBreakBlocks) {
+                // Prevent it from breaking blocks under the pitched train (bb expanded)
+                if (bp.y >= position.y - (position.y % 1) && classifyBlock(config.world, bp.up(), cache) != RAIL) {
+                    interferingBlocks.add(bp);
+                    interferingResistance += hardness;
                 }
             }
         }
@@ -302,9 +351,11 @@ public class SimulationState {
         return next;
     }
 
-    public SimulationState next(double distance, List<Vec3i> blocksAlreadyBroken) {
+    public SimulationState next(double distance, Set<Vec3i> blocksAlreadyBroken) {
         SimulationState next = new SimulationState(this);
+        long trackStart = PhysicsProfiler.start();
         next.moveAlongTrack(distance);
+        PhysicsProfiler.record(PhysicsProfiler.Section.TRACK, next, trackStart);
         if (this.position.equals(next.position)) {
             next.velocity = 0;
         } else {
@@ -416,7 +467,7 @@ public class SimulationState {
 
     public double forcesNewtons() {
         double gradeForceNewtons = config.massKg * -9.8 * Math.sin(Math.toRadians(pitch)) * Config.ConfigBalance.slopeMultiplier;
-        return config.tractiveEffortNewtons(Speed.fromMinecraft(velocity)) + gradeForceNewtons;
+        return config.tractiveEffortNewtons(velocity) + gradeForceNewtons;
     }
 
     public boolean atRest() {
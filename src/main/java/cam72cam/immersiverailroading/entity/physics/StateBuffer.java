@@ -0,0 +1,161 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.Config;
+import cam72cam.immersiverailroading.physics.TickPos;
+import cam72cam.immersiverailroading.util.Speed;
+import cam72cam.mod.math.Vec3d;
+import cam72cam.mod.world.World;
+
+import java.util.*;
+
+/**
+ * Server side ring buffer of the predicted movement of every simulated stock
+ *
+ * Stored as parallel primitive arrays, each stock gets a slot and each future tick is stored at
+ * slot * capacity + tickID % capacity.  TickPos objects are only built from this at the boundary, when the entity
+ * moves itself for the current tick, when predictions are sent to the client or when the stock is saved.
+ */
+public class StateBuffer {
+    private static final Map<World, StateBuffer> buffers = new HashMap<>();
+
+    private final int capacity;
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    private int slotCount = 0;
+
+    private int[] tickID = new int[0];
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] z = new double[0];
+    private double[] velocity = new double[0];
+    private float[] yaw = new float[0];
+    private float[] yawFront = new float[0];
+    private float[] yawRear = new float[0];
+    private float[] pitch = new float[0];
+
+    private StateBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static StateBuffer get(World world) {
+        StateBuffer buffer = buffers.get(world);
+        if (buffer == null || buffer.capacity != Config.ConfigDebug.physicsFutureTicks) {
+            buffer = new StateBuffer(Config.ConfigDebug.physicsFutureTicks);
+            buffers.put(world, buffer);
+        }
+        return buffer;
+    }
+
+    private int allocate(UUID id) {
+        Integer slot = slots.get(id);
+        if (slot != null) {
+            return slot;
+        }
+
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slotCount * capacity > tickID.length) {
+                grow(Math.max(16, slotCount * 2) * capacity);
+            }
+        }
+        // Make sure nothing left over from the previous owner is read back
+        Arrays.fill(tickID, slot * capacity, (slot + 1) * capacity, Integer.MIN_VALUE);
+        slots.put(id, slot);
+        return slot;
+    }
+
+    private void grow(int size) {
+        int old = tickID.length;
+        tickID = Arrays.copyOf(tickID, size);
+        Arrays.fill(tickID, old, size, Integer.MIN_VALUE);
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        z = Arrays.copyOf(z, size);
+        velocity = Arrays.copyOf(velocity, size);
+        yaw = Arrays.copyOf(yaw, size);
+        yawFront = Arrays.copyOf(yawFront, size);
+        yawRear = Arrays.copyOf(yawRear, size);
+        pitch = Arrays.copyOf(pitch, size);
+    }
+
+    private int index(int slot, int tick) {
+        return slot * capacity + Math.floorMod(tick, capacity);
+    }
+
+    public void write(UUID id, List<SimulationState> states) {
+        int slot = allocate(id);
+        for (SimulationState state : states) {
+            int i = index(slot, state.tickID);
+            tickID[i] = state.tickID;
+            x[i] = state.position.x;
+            y[i] = state.position.y;
+            z[i] = state.position.z;
+            velocity[i] = state.velocity;
+            yaw[i] = state.yaw;
+            yawFront[i] = state.yawFront;
+            yawRear[i] = state.yawRear;
+            pitch[i] = state.pitch;
+        }
+    }
+
+    /**
+     * @return null if there is no prediction for the given stock and tick
+     */
+    public TickPos getTickPos(UUID id, int tick) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return null;
+        }
+        int i = index(slot, tick);
+        if (tickID[i] != tick) {
+            return null;
+        }
+        return toTickPos(i);
+    }
+
+    /**
+     * @return every prediction for the given stock from the given tick on, in tick order
+     */
+    public List<TickPos> getTickPositions(UUID id, int fromTick) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return new ArrayList<>();
+        }
+        List<TickPos> positions = new ArrayList<>(capacity);
+        for (int tick = fromTick; tick < fromTick + capacity; tick++) {
+            int i = index(slot, tick);
+            if (tickID[i] == tick) {
+                positions.add(toTickPos(i));
+            }
+        }
+        return positions;
+    }
+
+    private TickPos toTickPos(int i) {
+        return new TickPos(tickID[i], Speed.fromMinecraft(velocity[i]), new Vec3d(x[i], y[i], z[i]), yawFront[i], yawRear[i], yaw[i], pitch[i], false);
+    }
+
+    /**
+     * Frees the slots of stock which is no longer in the index
+     */
+    public void retain(StockIndex index) {
+        Iterator<Map.Entry<UUID, Integer>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Integer> entry = it.next();
+            if (index.get(entry.getKey()) == null) {
+                if (freeCount == freeSlots.length) {
+                    freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeSlots.length * 2));
+                }
+                freeSlots[freeCount++] = entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,94 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.entity.EntityCoupleableRollingStock;
+import cam72cam.mod.world.World;
+
+import java.util.*;
+
+/**
+ * Server side index of the coupleable stock loaded in a world
+ *
+ * Stock is either active (just loaded, moving, or changed by a player) or resting (the whole last simulation pass was
+ * at rest and nothing has touched it since).  The simulation uses this instead of scanning the world's entity list
+ * and skips re-reading the configuration of resting stock.
+ */
+public class StockIndex {
+    private static final Map<World, StockIndex> indexes = new HashMap<>();
+
+    private final World world;
+    private final Map<UUID, EntityCoupleableRollingStock> loaded = new LinkedHashMap<>();
+    private final Set<UUID> resting = new HashSet<>();
+    private List<EntityCoupleableRollingStock> loadedList = null;
+
+    private StockIndex(World world) {
+        this.world = world;
+    }
+
+    public static StockIndex get(World world) {
+        return indexes.computeIfAbsent(world, StockIndex::new);
+    }
+
+    public void add(EntityCoupleableRollingStock stock) {
+        if (loaded.put(stock.getUUID(), stock) != stock) {
+            loadedList = null;
+            resting.remove(stock.getUUID());
+            // Loaded stock which is coupled to this was walked without it
+            stock.invalidateTrain();
+        }
+    }
+
+    public void remove(EntityCoupleableRollingStock stock) {
+        if (loaded.remove(stock.getUUID(), stock)) {
+            loadedList = null;
+            resting.remove(stock.getUUID());
+            stock.invalidateTrain();
+        }
+    }
+
+    public EntityCoupleableRollingStock get(UUID id) {
+        return loaded.get(id);
+    }
+
+    /**
+     * Snapshot of the loaded stock, only rebuilt when stock is added or removed
+     */
+    public List<EntityCoupleableRollingStock> getLoaded() {
+        if (loadedList == null) {
+            loadedList = Collections.unmodifiableList(new ArrayList<>(loaded.values()));
+        }
+        return loadedList;
+    }
+
+    /**
+     * Drops stock which has been killed or unloaded without us being told about it
+     */
+    public void prune() {
+        for (Iterator<EntityCoupleableRollingStock> it = loaded.values().iterator(); it.hasNext(); ) {
+            EntityCoupleableRollingStock stock = it.next();
+            if (stock.isDead() || !world.isBlockLoaded(stock.getBlockPosition())) {
+                it.remove();
+                loadedList = null;
+                resting.remove(stock.getUUID());
+                stock.invalidateTrain();
+            }
+        }
+    }
+
+    public boolean isResting(EntityCoupleableRollingStock stock) {
+        return resting.contains(stock.getUUID());
+    }
+
+    public void markActive(EntityCoupleableRollingStock stock) {
+        resting.remove(stock.getUUID());
+    }
+
+    public void markResting(EntityCoupleableRollingStock stock) {
+        if (loaded.containsKey(stock.getUUID())) {
+            resting.add(stock.getUUID());
+        }
+    }
+
+    public int restingCount() {
+        return resting.size();
+    }
+}
@@ -0,0 +1,93 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.ImmersiveRailroading;
+import cam72cam.immersiverailroading.entity.EntityCoupleableRollingStock;
+import cam72cam.immersiverailroading.net.MRSSyncPacket;
+import cam72cam.mod.entity.Player;
+import cam72cam.mod.world.World;
+
+import java.util.*;
+
+/**
+ * Sends the simulation's predictions to the players near each stock, one packet per player
+ *
+ * Each stock's prediction gets a new version whenever it actually changes.  A player is only sent the stock whose
+ * version they have not seen yet, so stock sitting still is not re-sent every pass.  A player near a large yard gets
+ * their batch split over as many packets as it takes to stay under MRSSyncPacket.MAX_BYTES.
+ */
+public class StockSync {
+    private static final Map<World, StockSync> syncs = new HashMap<>();
+
+    private final Map<UUID, byte[]> lastEncoded = new HashMap<>();
+    private final Map<UUID, Integer> versions = new HashMap<>();
+    // player -> stock -> version
+    private Map<UUID, Map<UUID, Integer>> sent = new HashMap<>();
+
+    public static StockSync get(World world) {
+        return syncs.computeIfAbsent(world, w -> new StockSync());
+    }
+
+    public void send(List<Player> players, StockIndex index, StateBuffer buffer, int startTickID) {
+        double syncDistanceSq = ImmersiveRailroading.ENTITY_SYNC_DISTANCE * ImmersiveRailroading.ENTITY_SYNC_DISTANCE;
+        List<EntityCoupleableRollingStock> loaded = index.getLoaded();
+        // Only encoded once per pass, even if multiple players are nearby
+        Map<UUID, byte[]> encoded = new HashMap<>();
+
+        Map<UUID, Map<UUID, Integer>> nextSent = new HashMap<>();
+        for (Player player : players) {
+            Map<UUID, Integer> playerSent = sent.getOrDefault(player.getUUID(), Collections.emptyMap());
+            Map<UUID, Integer> nextPlayerSent = new HashMap<>();
+            List<byte[]> batch = new ArrayList<>();
+            int batchBytes = 0;
+
+            for (EntityCoupleableRollingStock stock : loaded) {
+                if (player.getPosition().distanceToSquared(stock.getPosition()) >= syncDistanceSq) {
+                    continue;
+                }
+
+                UUID id = stock.getUUID();
+                byte[] data = encoded.get(id);
+                if (data == null) {
+                    long encodeStart = PhysicsProfiler.start();
+                    data = MRSSyncPacket.encode(id, buffer.getTickPositions(id, startTickID));
+                    if (!MRSSyncPacket.samePrediction(data, lastEncoded.get(id))) {
+                        versions.merge(id, 1, Integer::sum);
+                    }
+                    lastEncoded.put(id, data);
+                    encoded.put(id, data);
+                    if (!stock.states.isEmpty()) {
+                        PhysicsProfiler.record(PhysicsProfiler.Section.PACKETS, stock.states.get(0), encodeStart);
+                    }
+                }
+
+                int version = versions.get(id);
+                if (!Objects.equals(playerSent.get(id), version)) {
+                    if (batchBytes + data.length > MRSSyncPacket.MAX_BYTES && !batch.isEmpty()) {
+                        send(player, batch);
+                        batch = new ArrayList<>();
+                        batchBytes = 0;
+                    }
+                    batch.add(data);
+                    batchBytes += data.length;
+                }
+                nextPlayerSent.put(id, version);
+            }
+
+            if (!batch.isEmpty()) {
+                send(player, batch);
+            }
+            nextSent.put(player.getUUID(), nextPlayerSent);
+        }
+        // Players which left (and stock which went out of range) get a fresh copy when they come back
+        sent = nextSent;
+
+        lastEncoded.keySet().removeIf(id -> index.get(id) == null);
+        versions.keySet().retainAll(lastEncoded.keySet());
+    }
+
+    private static void send(Player player, List<byte[]> batch) {
+        long sendStart = PhysicsProfiler.start();
+        new MRSSyncPacket(batch).sendToPlayer(player);
+        PhysicsProfiler.record(PhysicsProfiler.Section.PACKETS, player.getWorld(), sendStart);
+    }
+}
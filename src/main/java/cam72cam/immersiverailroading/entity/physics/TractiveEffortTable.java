@@ -0,0 +1,52 @@
+package cam72cam.immersiverailroading.entity.physics;
+
+import cam72cam.immersiverailroading.entity.Locomotive;
+import cam72cam.immersiverailroading.util.Speed;
+
+import java.util.Arrays;
+
+/**
+ * Piecewise linear tractive effort vs speed for a single Configuration snapshot
+ *
+ * The simulation asks for tractive effort several times per state and only ever at speeds close to each other, so
+ * samples are taken every 1 km/h the first time a speed band is used and memoized in a small direct mapped table.
+ * Lookups in between are interpolated and do not allocate.
+ */
+public class TractiveEffortTable {
+    private static final double stepMinecraft = Speed.fromMetric(1).minecraft();
+    private static final int slots = 16;
+
+    private final Locomotive locomotive;
+    private final double maxSpeedMinecraft;
+    private final long[] bins = new long[slots];
+    private final double[] newtons = new double[slots];
+
+    public TractiveEffortTable(Locomotive locomotive) {
+        this.locomotive = locomotive;
+        this.maxSpeedMinecraft = locomotive.getDefinition().getMaxSpeed(locomotive.gauge).minecraft();
+        Arrays.fill(bins, Long.MIN_VALUE);
+    }
+
+    private double sample(long bin) {
+        int slot = (int) (bin & (slots - 1));
+        if (bins[slot] != bin) {
+            // Past max speed there is no tractive effort, clamp so the last band still interpolates to the limit
+            double speed = bin * stepMinecraft;
+            speed = Math.copySign(Math.min(Math.abs(speed), maxSpeedMinecraft), speed);
+            newtons[slot] = locomotive.getTractiveEffortNewtons(Speed.fromMinecraft(speed));
+            bins[slot] = bin;
+        }
+        return newtons[slot];
+    }
+
+    public double newtons(double speedMinecraft) {
+        if (Math.abs(speedMinecraft) > maxSpeedMinecraft) {
+            return 0;
+        }
+        double position = speedMinecraft / stepMinecraft;
+        long bin = (long) Math.floor(position);
+        double fraction = position - bin;
+        double low = sample(bin);
+        return fraction == 0 ? low : low + (sample(bin + 1) - low) * fraction;
+    }
+}
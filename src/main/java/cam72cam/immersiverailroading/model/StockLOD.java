@@ -0,0 +1,119 @@
+package cam72cam.immersiverailroading.model;
+
+import cam72cam.immersiverailroading.ConfigGraphics;
+import cam72cam.immersiverailroading.ImmersiveRailroading;
+import cam72cam.immersiverailroading.entity.EntityMoveableRollingStock;
+import cam72cam.mod.MinecraftClient;
+import cam72cam.mod.math.Vec3d;
+import cam72cam.mod.world.World;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Picks the texture LOD for rendered stock
+ *
+ * All stock with the same definition and texture share a texture, so they all use the LOD of whichever one is closest
+ * to the player.  The stock in the world is bucketed by (definition, texture) once per frame, after which each
+ * renderEntity is just a lookup.
+ */
+public class StockLOD {
+    private static class Bucket {
+        double minDistanceSq;
+        int count;
+        int lod;
+    }
+
+    // definition -> texture (may be null) -> bucket
+    private static final Map<String, Map<String, Bucket>> buckets = new HashMap<>();
+    private static World frameWorld;
+    private static long frameTick = -1;
+    private static float framePartialTicks = -1;
+    private static long lastReportMs;
+
+    private StockLOD() {
+    }
+
+    public static int getLOD(EntityMoveableRollingStock stock, float partialTicks) {
+        World world = stock.getWorld();
+        if (world != frameWorld || world.getTicks() != frameTick || partialTicks != framePartialTicks) {
+            frameWorld = world;
+            frameTick = world.getTicks();
+            framePartialTicks = partialTicks;
+            rebuild(world);
+        }
+
+        Map<String, Bucket> textures = buckets.get(stock.getDefinitionID());
+        Bucket bucket = textures != null ? textures.get(stock.getTexture()) : null;
+        // Spawned this frame
+        return bucket != null ? bucket.lod : tier(0);
+    }
+
+    private static int tier(double playerDistanceSq) {
+        if (playerDistanceSq > ConfigGraphics.StockLODDistance * 2 * ConfigGraphics.StockLODDistance * 2) {
+            return StockModel.LOD_SMALL;
+        } else if (playerDistanceSq > ConfigGraphics.StockLODDistance * ConfigGraphics.StockLODDistance) {
+            return StockModel.LOD_LARGE;
+        } else {
+            return cam72cam.mod.Config.MaxTextureSize;
+        }
+    }
+
+    private static void rebuild(World world) {
+        for (Map<String, Bucket> textures : buckets.values()) {
+            for (Bucket bucket : textures.values()) {
+                bucket.minDistanceSq = Double.MAX_VALUE;
+                bucket.count = 0;
+            }
+        }
+
+        Vec3d player = MinecraftClient.getPlayer().getPosition();
+        for (EntityMoveableRollingStock stock : world.getEntities(EntityMoveableRollingStock.class)) {
+            Bucket bucket = buckets
+                    .computeIfAbsent(stock.getDefinitionID(), k -> new HashMap<>())
+                    .computeIfAbsent(stock.getTexture(), k -> new Bucket());
+            bucket.minDistanceSq = Math.min(bucket.minDistanceSq, stock.getPosition().distanceToSquared(player));
+            bucket.count++;
+        }
+
+        for (Iterator<Map<String, Bucket>> it = buckets.values().iterator(); it.hasNext(); ) {
+            Map<String, Bucket> textures = it.next();
+            textures.values().removeIf(bucket -> bucket.count == 0);
+            if (textures.isEmpty()) {
+                it.remove();
+                continue;
+            }
+            for (Bucket bucket : textures.values()) {
+                bucket.lod = tier(bucket.minDistanceSq);
+            }
+        }
+
+        if (ConfigGraphics.StockLODDebug && System.currentTimeMillis() - lastReportMs > 10000) {
+            lastReportMs = System.currentTimeMillis();
+            ImmersiveRailroading.info("Stock LOD: %s", describe());
+        }
+    }
+
+    /**
+     * @return number of stock (and distinct textures) at each LOD
+     */
+    public static String describe() {
+        Map<Integer, int[]> tiers = new HashMap<>();
+        for (Map<String, Bucket> textures : buckets.values()) {
+            for (Bucket bucket : textures.values()) {
+                int[] counts = tiers.computeIfAbsent(bucket.lod, k -> new int[2]);
+                counts[0] += bucket.count;
+                counts[1]++;
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<Integer, int[]> entry : tiers.entrySet()) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(String.format("%spx: %s stock (%s textures)", entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        return result.length() > 0 ? result.toString() : "no stock";
+    }
+}
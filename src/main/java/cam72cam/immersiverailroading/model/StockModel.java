@@ -22,9 +22,7 @@ import cam72cam.mod.render.obj.OBJRender;
 import cam72cam.mod.render.opengl.RenderState;
 import util.Matrix4;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public class StockModel<ENTITY extends EntityMoveableRollingStock, DEFINITION extends EntityRollingStockDefinition> extends OBJModel {
@@ -44,6 +42,7 @@ public class StockModel<ENTITY extends EntityMoveableRollingStock, DEFINITION ex
     private ModelComponent remaining;
     protected final List<Door<ENTITY>> doors;
     protected final List<Control<ENTITY>> controls;
+    private volatile Map<ModelComponentType, List<Control<ENTITY>>> controlsByType;
     protected final List<Readout<ENTITY>> gauges;
     protected final List<Seat<ENTITY>> seats;
 
@@ -279,8 +278,6 @@ public class StockModel<ENTITY extends EntityMoveableRollingStock, DEFINITION ex
         sway.removed(stock);
     }
 
-    private int lod_level = LOD_LARGE;
-    private int lod_tick = 0;
     public final void renderEntity(EntityMoveableRollingStock stock, RenderState state, float partialTicks) {
         List<ModelComponentType> available = stock.isBuilt() ? null : stock.getItemComponents()
                 .stream().flatMap(x -> x.render.stream())
@@ -296,24 +293,7 @@ public class StockModel<ENTITY extends EntityMoveableRollingStock, DEFINITION ex
             state = state.shader(ConfigGraphics.OptiFineEntityShader);
         }
 
-        // Refresh LOD every 0.5s
-        if (lod_tick + 10 < stock.getTickCount() || lod_tick > stock.getTickCount())  {
-            lod_tick = stock.getTickCount();
-
-            double playerDistanceSq = stock.getWorld().getEntities(stock.getClass()).stream()
-                    .filter(x -> Objects.equals(x.getDefinitionID(), stock.getDefinitionID()) && Objects.equals(x.getTexture(), stock.getTexture()))
-                    .mapToDouble(x -> x.getPosition().distanceToSquared(MinecraftClient.getPlayer().getPosition())).min().orElse(0);
-
-            if (playerDistanceSq > ConfigGraphics.StockLODDistance * 2 * ConfigGraphics.StockLODDistance * 2) {
-                lod_level = LOD_SMALL;
-            } else if (playerDistanceSq > ConfigGraphics.StockLODDistance * ConfigGraphics.StockLODDistance) {
-                lod_level = LOD_LARGE;
-            } else {
-                lod_level = cam72cam.mod.Config.MaxTextureSize;
-            }
-        }
-
-        Binder binder = binder().texture(stock.getTexture()).lod(lod_level);
+        Binder binder = binder().texture(stock.getTexture()).lod(StockLOD.getLOD(stock, partialTicks));
         try (
                 OBJRender.Binding bound = binder.bind(state);
         ) {
@@ -365,6 +345,22 @@ public class StockModel<ENTITY extends EntityMoveableRollingStock, DEFINITION ex
         return controls;
     }
 
+    /**
+     * Indexed on first use, all of the controls have been parsed by the time the model is handed out
+     */
+    public List<Control<ENTITY>> getControls(ModelComponentType type) {
+        Map<ModelComponentType, List<Control<ENTITY>>> index = controlsByType;
+        if (index == null) {
+            index = new EnumMap<>(ModelComponentType.class);
+            for (Control<ENTITY> control : controls) {
+                index.computeIfAbsent(control.part.type, t -> new ArrayList<>()).add(control);
+            }
+            index.replaceAll((t, list) -> Collections.unmodifiableList(list));
+            controlsByType = index;
+        }
+        return index.getOrDefault(type, Collections.emptyList());
+    }
+
     public List<Door<ENTITY>> getDoors() {
         return doors;
     }
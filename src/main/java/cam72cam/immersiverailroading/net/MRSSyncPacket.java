@@ -1,31 +1,179 @@
 package cam72cam.immersiverailroading.net;
 
+import cam72cam.immersiverailroading.ImmersiveRailroading;
 import cam72cam.immersiverailroading.entity.EntityMoveableRollingStock;
 import cam72cam.immersiverailroading.physics.TickPos;
+import cam72cam.immersiverailroading.util.Speed;
+import cam72cam.mod.math.Vec3d;
 import cam72cam.mod.net.Packet;
 import cam72cam.mod.serialization.TagField;
+import cam72cam.mod.serialization.TagMapper;
 
+import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /*
  * Movable rolling stock sync packet
+ *
+ * Carries the predicted positions of every stock near a player.  Each stock is packed as its first position followed
+ * by quantized per-tick deltas, with the angles stored as shorts.  Callers keep each packet under MAX_BYTES.
  */
 public class MRSSyncPacket extends Packet {
-	@TagField
-	private EntityMoveableRollingStock stock;
-	@TagField(mapper = TickPos.ListTagMapper.class)
-	private List<TickPos> positions;
+	// Position deltas are stored in 1/1024ths of a block
+	private static final double POSITION_SCALE = 1024;
+	// Full circle in a short
+	private static final float ANGLE_SCALE = 65536 / 360f;
+	private static final int FLAG_ABSOLUTE = 1;
+	private static final int FLAG_OFF_TRACK = 2;
+	// Byte offset of the base tickID in an encoded stock, see encode
+	private static final int TICK_OFFSET = 16;
+	// Well under the size a single packet can carry, large yards are split over several packets
+	public static final int MAX_BYTES = 32 * 1024;
+
+	@TagField(mapper = BytesMapper.class)
+	private byte[] data;
 
 	public MRSSyncPacket() { }
 
-	public MRSSyncPacket(EntityMoveableRollingStock mrs, List<TickPos> positions) {
-		this.stock = mrs;
-		this.positions = positions;
+	/**
+	 * @param encoded stock from encode()
+	 */
+	public MRSSyncPacket(List<byte[]> encoded) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (byte[] stock : encoded) {
+			bytes.write(stock, 0, stock.length);
+		}
+		this.data = bytes.toByteArray();
 	}
+
 	@Override
 	public void handle() {
-		if (stock != null) {
-            stock.handleTickPosPacket(positions);
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			while (in.available() > 0) {
+				UUID id = new UUID(in.readLong(), in.readLong());
+				List<TickPos> positions = decode(in);
+				EntityMoveableRollingStock stock = getPlayer().getWorld().getEntity(id, EntityMoveableRollingStock.class);
+				if (stock != null) {
+					stock.handleTickPosPacket(positions);
+				}
+			}
+		} catch (IOException e) {
+			ImmersiveRailroading.catching(e);
+		}
+	}
+
+	private static short quantizeAngle(float angle) {
+		return (short) Math.round(angle * ANGLE_SCALE);
+	}
+
+	/**
+	 * @param positions in tick order, at most 127 ticks
+	 */
+	public static byte[] encode(UUID id, List<TickPos> positions) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + positions.size() * 20);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(id.getMostSignificantBits());
+			out.writeLong(id.getLeastSignificantBits());
+			int baseTick = positions.isEmpty() ? 0 : positions.get(0).tickID;
+			out.writeInt(baseTick);
+			out.writeByte(positions.size());
+
+			// Deltas are taken from what the client will have decoded so the rounding does not add up
+			double x = 0;
+			double y = 0;
+			double z = 0;
+			for (int i = 0; i < positions.size(); i++) {
+				TickPos pos = positions.get(i);
+				long dx = Math.round((pos.position.x - x) * POSITION_SCALE);
+				long dy = Math.round((pos.position.y - y) * POSITION_SCALE);
+				long dz = Math.round((pos.position.z - z) * POSITION_SCALE);
+				boolean absolute = i == 0 ||
+						dx != (short) dx || dy != (short) dy || dz != (short) dz;
+
+				out.writeByte(pos.tickID - baseTick);
+				out.writeByte((absolute ? FLAG_ABSOLUTE : 0) | (pos.isOffTrack ? FLAG_OFF_TRACK : 0));
+				if (absolute) {
+					x = pos.position.x;
+					y = pos.position.y;
+					z = pos.position.z;
+					out.writeDouble(x);
+					out.writeDouble(y);
+					out.writeDouble(z);
+				} else {
+					x += dx / POSITION_SCALE;
+					y += dy / POSITION_SCALE;
+					z += dz / POSITION_SCALE;
+					out.writeShort((int) dx);
+					out.writeShort((int) dy);
+					out.writeShort((int) dz);
+				}
+				out.writeFloat((float) pos.speed.minecraft());
+				out.writeShort(quantizeAngle(pos.rotationYaw));
+				out.writeShort(quantizeAngle(pos.frontYaw));
+				out.writeShort(quantizeAngle(pos.rearYaw));
+				out.writeShort(quantizeAngle(pos.rotationPitch));
+			}
+		} catch (IOException e) {
+			ImmersiveRailroading.catching(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static List<TickPos> decode(DataInputStream in) throws IOException {
+		int baseTick = in.readInt();
+		int count = in.readUnsignedByte();
+		List<TickPos> positions = new ArrayList<>(count);
+
+		double x = 0;
+		double y = 0;
+		double z = 0;
+		for (int i = 0; i < count; i++) {
+			int tickID = baseTick + in.readByte();
+			int flags = in.readByte();
+			if ((flags & FLAG_ABSOLUTE) != 0) {
+				x = in.readDouble();
+				y = in.readDouble();
+				z = in.readDouble();
+			} else {
+				x += in.readShort() / POSITION_SCALE;
+				y += in.readShort() / POSITION_SCALE;
+				z += in.readShort() / POSITION_SCALE;
+			}
+			Speed speed = Speed.fromMinecraft(in.readFloat());
+			float rotationYaw = in.readShort() / ANGLE_SCALE;
+			float frontYaw = in.readShort() / ANGLE_SCALE;
+			float rearYaw = in.readShort() / ANGLE_SCALE;
+			float rotationPitch = in.readShort() / ANGLE_SCALE;
+			positions.add(new TickPos(tickID, speed, new Vec3d(x, y, z), frontYaw, rearYaw, rotationYaw, rotationPitch, (flags & FLAG_OFF_TRACK) != 0));
+		}
+		return positions;
+	}
+
+	/**
+	 * @return true if both encoded stock predict the same movement, regardless of which tick they start at
+	 */
+	public static boolean samePrediction(byte[] a, byte[] b) {
+		if (a == null || b == null || a.length != b.length) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if ((i < TICK_OFFSET || i >= TICK_OFFSET + 4) && a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class BytesMapper implements TagMapper<byte[]> {
+		@Override
+		public TagAccessor<byte[]> apply(Class<byte[]> type, String fieldName, TagField tag) {
+			// Raw byte array tag, a string would need base64 and is limited to 64k by writeUTF
+			return new TagAccessor<>(
+					(nbt, bytes) -> nbt.internal.setByteArray(fieldName, bytes),
+					nbt -> nbt.internal.getByteArray(fieldName)
+			);
 		}
 	}
 }
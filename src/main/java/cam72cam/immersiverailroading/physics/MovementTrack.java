@@ -5,8 +5,7 @@ import cam72cam.immersiverailroading.library.Gauge;
 import cam72cam.immersiverailroading.library.TrackItems;
 import cam72cam.immersiverailroading.tile.TileRail;
 import cam72cam.immersiverailroading.tile.TileRailBase;
-import cam72cam.immersiverailroading.track.IIterableTrack;
-import cam72cam.immersiverailroading.track.PosStep;
+import cam72cam.immersiverailroading.track.TrackPath;
 import cam72cam.immersiverailroading.util.VecUtil;
 import cam72cam.immersiverailroading.thirdparty.trackapi.ITrack;
 import cam72cam.mod.world.World;
@@ -14,11 +13,103 @@ import cam72cam.mod.math.Vec3d;
 import cam72cam.mod.math.Vec3i;
 import cam72cam.mod.util.Facing;
 
-import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MovementTrack {
+	/*
+	 * Track probes made during the simulation pass currently running in each world.  Consecutive future ticks of the
+	 * same train keep probing the same few blocks, so these are kept until the pass ends or a rail changes.
+	 */
+	private static final Map<World, Map<TrackKey, Optional<ITrack>>> passCaches = new ConcurrentHashMap<>();
+
+	private static class TrackKey {
+		private final Vec3i pos;
+		private final double gauge;
+		private final boolean crossGauge;
+
+		private TrackKey(Vec3i pos, double gauge, boolean crossGauge) {
+			this.pos = pos;
+			this.gauge = gauge;
+			this.crossGauge = crossGauge;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof TrackKey) {
+				TrackKey other = (TrackKey) o;
+				return pos.equals(other.pos) && gauge == other.gauge && crossGauge == other.crossGauge;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(pos, gauge, crossGauge);
+		}
+	}
+
+	public static void startTrackCache(World world) {
+		passCaches.put(world, new ConcurrentHashMap<>());
+	}
+
+	public static void stopTrackCache(World world) {
+		passCaches.remove(world);
+	}
+
+	/**
+	 * Called when a rail is loaded, changed or removed
+	 */
+	public static void invalidateTrackCache() {
+		passCaches.values().forEach(Map::clear);
+	}
+
+	private static ITrack getTrack(World world, Vec3d pos, double gauge, Map<TrackKey, Optional<ITrack>> cache) {
+		TrackKey key = null;
+		if (cache != null) {
+			key = new TrackKey(new Vec3i(pos), gauge, false);
+			Optional<ITrack> cached = cache.get(key);
+			if (cached != null) {
+				return cached.orElse(null);
+			}
+		}
+
+		ITrack te = ITrack.get(world, pos, true);
+		if (te != null && Gauge.from(te.getTrackGauge()) != Gauge.from(gauge)) {
+			te = null;
+		}
+		// Other mods' tracks may depend on the exact position, only cache our own
+		if (cache != null && (te == null || te instanceof TileRailBase)) {
+			cache.put(key, Optional.ofNullable(te));
+		}
+		return te;
+	}
+
+	private static TileRailBase getCrossGaugeRail(World world, Vec3i pos, Map<TrackKey, Optional<ITrack>> cache) {
+		TrackKey key = null;
+		if (cache != null) {
+			key = new TrackKey(pos, 0, true);
+			Optional<ITrack> cached = cache.get(key);
+			if (cached != null) {
+				return (TileRailBase) cached.orElse(null);
+			}
+		}
+
+		TileRailBase rail = world.getBlockEntity(pos, TileRailBase.class);
+		if (rail != null && rail.getParentReplaced() == null) {
+			rail = null;
+		}
+		if (cache != null) {
+			cache.put(key, Optional.ofNullable(rail));
+		}
+		return rail;
+	}
 
 	public static ITrack findTrack(World world, Vec3d currentPosition, float trainYaw, double gauge) {
+		Map<TrackKey, Optional<ITrack>> cache = passCaches.get(world);
+
 		Vec3d[] positions = new Vec3d[] {
 				currentPosition,
 				currentPosition.add(VecUtil.fromWrongYaw(1, trainYaw)),
@@ -37,13 +128,13 @@ public class MovementTrack {
 		
 		for (Vec3d pos : positions) {
 			for (double height : heightSkew) {
-				ITrack te = ITrack.get(world, pos.add(0, height + (currentPosition.y%1), 0), true);
-				if (te != null && Gauge.from(te.getTrackGauge()) == Gauge.from(gauge)) {
+				ITrack te = getTrack(world, pos.add(0, height + (currentPosition.y%1), 0), gauge, cache);
+				if (te != null) {
 					return te;
 				}
 				// HACK for cross gauge
-				TileRailBase rail = world.getBlockEntity(new Vec3i(pos).add(new Vec3i(0, (int)(height + (currentPosition.y%1)), 0)), TileRailBase.class);
-				if (rail != null && rail.getParentReplaced() != null) {
+				TileRailBase rail = getCrossGaugeRail(world, new Vec3i(pos).add(new Vec3i(0, (int)(height + (currentPosition.y%1)), 0)), cache);
+				if (rail != null) {
 					return rail;
 				}
 			}
@@ -133,26 +224,22 @@ public class MovementTrack {
 			} else {
 				return backward;
 			}
-		} else if (rail.info.getBuilder(world) instanceof IIterableTrack) {
-			/*
-			 * Discovery: This is not accurate for distances less than 0.1m
-			 * Since we snap to the line, small distances are snapped to a tangent that's further than they are
-			 * trying to move.  Instead we should probably calculate the vector between the closest pos
-			 * and the current pos and move distance along that.  How would that work for slopes at the ends? just fine?
-			 */
-			List<PosStep> positions = ((IIterableTrack) rail.info.getBuilder(world)).getPath(0.25 * rail.info.settings.gauge.scale());
+		} else {
+			TrackPath path = rail.info.getTrackPath(world);
+			if (path == null) {
+				return currentPosition.add(delta);
+			}
+
 			Vec3d center = rail.info.placementInfo.placementPosition.add(rail.getPos()).add(0, heightOffset, 0);
-			Vec3d target = currentPosition.add(delta);
-			Vec3d relative = target.subtract(center);
 
-			if (positions.isEmpty()) {
+			if (path.size() == 0) {
 				ImmersiveRailroading.error("Invalid track path %s", rail.info.uniqueID);
 				return currentPosition; // keep in same place for debugging
 			}
-			if (positions.size() == 1) {
+			if (path.size() == 1) {
 				// track with length == 1
-				PosStep pos = positions.get(0);
-				Vec3d offset = VecUtil.fromYaw(delta.length(), pos.yaw);
+				Vec3d target = currentPosition.add(delta);
+				Vec3d offset = VecUtil.fromYaw(delta.length(), path.yaw(0));
 				Vec3d result = currentPosition.add(offset);
 				Vec3d resultOpposite = currentPosition.subtract(offset);
 				if (result.distanceToSquared(target) < resultOpposite.distanceToSquared(target)) {
@@ -162,60 +249,12 @@ public class MovementTrack {
 				}
 			}
 
-			/* Simple ordered binary search ***
-			l    c      r
-			l    c  r
-			    lc  r
-			    lcr
-			    lr
-
-			 *** Updated to step by 1/3rds since this is not a purely linear search.
-			 */
-			int left = 0;
-			double leftDistance = positions.get(left).distanceToSquared(relative);
-			int right = positions.size() - 1;
-			double rightDistance = positions.get(right).distanceToSquared(relative);
-			while (right - left > 1) {
-				if (leftDistance > rightDistance) {
-					left = (int) Math.ceil(left + (right - left) / 3f);
-					leftDistance = positions.get(left).distanceToSquared(relative);
-				} else {
-					right = (int) Math.floor(right + (left - right) / 3f);
-					rightDistance = positions.get(right).distanceToSquared(relative);
-				}
-			}
-			if (right == left) {
-				ImmersiveRailroading.warn("Correcting track pathing tree...");
-				// Hack for edge case
-				if (right == positions.size() -1) {
-					left -= 1;
-				} else {
-					right += 1;
-				}
-			}
-
-			PosStep leftPos = positions.get(left);
-			PosStep rightPos = positions.get(right);
-
-			if (leftDistance < 0.000001) {
-				return center.add(leftPos);
-			}
-			if (rightDistance < 0.000001) {
-				return center.add(rightPos);
-			}
-
-			Vec3d between = rightPos.subtract(leftPos);
-			Vec3d offset = between.scale(Math.sqrt(leftDistance) / between.length());
-			// Weird edge case where we need to move in the opposite direction since we are given a position past the end of pathing
-			Vec3d point = center.add(leftPos);
-			Vec3d result = point.add(offset);
-			Vec3d resultOpposite = point.subtract(offset);
-			if (result.distanceToSquared(target) < resultOpposite.distanceToSquared(target)) {
-				return result;
-			} else {
-				return resultOpposite;
-			}
+			// Project onto the path and move along it by the requested distance.  Snapping the target position to the
+			// path instead is not accurate for small distances, which get pulled to the closest tangent.
+			double start = path.project(currentPosition.subtract(center));
+			Vec3d tangent = path.tangentAt(start);
+			double direction = tangent.x * delta.x + tangent.y * delta.y + tangent.z * delta.z >= 0 ? 1 : -1;
+			return center.add(path.positionAt(start + distance * direction));
 		}
-		return currentPosition.add(delta);
 	}
 }
@@ -6,6 +6,7 @@ import cam72cam.immersiverailroading.util.Speed;
 import cam72cam.mod.math.Vec3d;
 import cam72cam.mod.serialization.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class TickPos {
@@ -107,13 +108,11 @@ public class TickPos {
 		return new TickPos(tickID, speed, position, frontYaw, rearYaw, rotationYaw, rotationPitch, isOffTrack);
 	}
 
-    public static class ListTagMapper implements TagMapper<List<TickPos>> {
-        @Override
-        public TagAccessor<List<TickPos>> apply(Class<List<TickPos>> type, String fieldName, TagField tag) {
-            return new TagAccessor<>(
-                    (data, positions) -> data.setList(fieldName, positions, TickPos::toTag),
-                    data -> data.getList(fieldName, TickPos::new)
-            );
-        }
+    public static List<TickPos> getList(TagCompound data, String key) {
+        return data.hasKey(key) ? data.getList(key, TickPos::new) : new ArrayList<>();
     }
-}
\ No newline at end of file
+
+    public static void setList(TagCompound data, String key, List<TickPos> positions) {
+        data.setList(key, positions, TickPos::toTag);
+    }
+}
@@ -353,7 +353,7 @@ public class DefinitionManager {
      * @param <E> Type of item.
      * @return Singlethreaded or multithreaded stream.
      */
-    private static <E> Stream<E> getStockLoadingStream(Collection<E> collection) {
+    static <E> Stream<E> getStockLoadingStream(Collection<E> collection) {
         if (!ConfigPerformance.multithreadedStockLoading) {
             return collection.stream();
         }
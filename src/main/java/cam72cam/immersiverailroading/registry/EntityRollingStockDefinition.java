@@ -27,16 +27,16 @@ import cam72cam.mod.sound.ISound;
 import cam72cam.mod.text.TextUtil;
 import cam72cam.mod.world.World;
 
-import java.awt.geom.Path2D;
-import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @TagMapped(EntityRollingStockDefinition.TagMapper.class)
 public abstract class EntityRollingStockDefinition {
@@ -88,7 +88,9 @@ public abstract class EntityRollingStockDefinition {
     private boolean hasPressureBrake;
     private final Map<ModelComponentType, List<ModelComponent>> renderComponents;
     private final List<ItemComponentType> itemComponents;
-    private final Function<EntityBuildableRollingStock, float[][]> heightmap;
+    private final Function<EntityBuildableRollingStock, HeightMap> heightmap;
+    // Read from the heightmap cache the first time a heightmap is needed
+    private DecodedHeightMap decodedHeightMap;
     private final Map<String, LightDefinition> lights = new HashMap<>();
     protected final Map<String, ControlSoundsDefinition> controlSounds = new HashMap<>();
     public Identifier smokeParticleTexture;
@@ -648,6 +650,7 @@ public abstract class EntityRollingStockDefinition {
 
         HeightMapData(EntityRollingStockDefinition def) {
             ImmersiveRailroading.info("Generating heightmap %s", def.defID);
+            long startMs = System.currentTimeMillis();
 
             double ratio = 8;
             int precision = (int) Math.ceil(def.heightBounds * 4);
@@ -662,16 +665,23 @@ public abstract class EntityRollingStockDefinition {
 
             VertexBuffer vb = def.model.vbo.buffer.get();
 
-            for (int i = 0; i < components.size(); i++) {
+            // Each component only writes to its own slice of data
+            List<Integer> indexes = IntStream.range(0, components.size()).boxed().collect(Collectors.toList());
+            DefinitionManager.getStockLoadingStream(indexes).forEach(i -> {
                 ModelComponent rc = components.get(i);
                 int idx = i * xRes * zRes;
+                float[] faceX = new float[vb.vertsPerFace];
+                float[] faceZ = new float[vb.vertsPerFace];
+                float[] crossings = new float[vb.vertsPerFace];
                 for (String group : rc.modelIDs) {
                     OBJGroup faces = def.model.groups.get(group);
 
                     for (int face = faces.faceStart; face <= faces.faceStop; face++) {
-                        Path2D path = new Path2D.Float();
                         float fheight = 0;
-                        boolean first = true;
+                        float minX = Float.POSITIVE_INFINITY;
+                        float maxX = Float.NEGATIVE_INFINITY;
+                        float minZ = Float.POSITIVE_INFINITY;
+                        float maxZ = Float.NEGATIVE_INFINITY;
                         for (int point = 0; point < vb.vertsPerFace; point++) {
                             int vertex = face * vb.vertsPerFace * vb.stride + point * vb.stride;
                             float vertX = vb.data[vertex + 0];
@@ -679,36 +689,56 @@ public abstract class EntityRollingStockDefinition {
                             float vertZ = vb.data[vertex + 2];
                             vertX += def.frontBounds;
                             vertZ += def.widthBounds / 2;
-                            if (first) {
-                                path.moveTo(vertX * ratio, vertZ * ratio);
-                                first = false;
-                            } else {
-                                path.lineTo(vertX * ratio, vertZ * ratio);
-                            }
+                            faceX[point] = (float) (vertX * ratio);
+                            faceZ[point] = (float) (vertZ * ratio);
+                            minX = Math.min(minX, faceX[point]);
+                            maxX = Math.max(maxX, faceX[point]);
+                            minZ = Math.min(minZ, faceZ[point]);
+                            maxZ = Math.max(maxZ, faceZ[point]);
                             fheight += vertY / vb.vertsPerFace;
                         }
-                        Rectangle2D bounds = path.getBounds2D();
-                        if (bounds.getWidth() * bounds.getHeight() < 1) {
+                        if ((maxX - minX) * (maxZ - minZ) < 1) {
                             continue;
                         }
-                        for (int x = 0; x < xRes; x++) {
-                            for (int z = 0; z < zRes; z++) {
-                                float relX = ((xRes - 1) - x);
-                                float relZ = z;
-                                if (bounds.contains(relX, relZ) && path.contains(relX, relZ)) {
-                                    float relHeight = fheight / (float) def.heightBounds;
-                                    relHeight = ((int) Math.ceil(relHeight * precision)) / (float) precision;
-                                    data[idx + x * zRes + z] = Math.max(data[idx + x * zRes + z], relHeight);
+
+                        float relHeight = fheight / (float) def.heightBounds;
+                        relHeight = ((int) Math.ceil(relHeight * precision)) / (float) precision;
+
+                        // Only the rows the face covers
+                        int startZ = Math.max(0, (int) Math.ceil(minZ));
+                        int stopZ = Math.min(zRes - 1, (int) Math.floor(maxZ));
+                        for (int relZ = startZ; relZ <= stopZ; relZ++) {
+                            // Same crossing rule as Path2D.contains: edges are half open in z, and a cell is inside
+                            // when an odd number of edges cross the row to its right
+                            int count = 0;
+                            for (int point = 0; point < vb.vertsPerFace; point++) {
+                                int next = (point + 1) % vb.vertsPerFace;
+                                float z0 = faceZ[point];
+                                float z1 = faceZ[next];
+                                if (z0 <= relZ && relZ < z1 || z1 <= relZ && relZ < z0) {
+                                    crossings[count++] = faceX[point] + (relZ - z0) * (faceX[next] - faceX[point]) / (z1 - z0);
+                                }
+                            }
+                            Arrays.sort(crossings, 0, count);
+
+                            for (int c = 0; c + 1 < count; c += 2) {
+                                int startX = Math.max(0, (int) Math.ceil(crossings[c]));
+                                int stopX = Math.min(xRes - 1, (int) Math.ceil(crossings[c + 1]) - 1);
+                                for (int relX = startX; relX <= stopX; relX++) {
+                                    int x = (xRes - 1) - relX;
+                                    data[idx + x * zRes + relZ] = Math.max(data[idx + x * zRes + relZ], relHeight);
                                 }
                             }
                         }
                     }
                 }
-            }
+            });
+
+            ImmersiveRailroading.info("Generated heightmap %s in %sms", def.defID, System.currentTimeMillis() - startMs);
         }
     }
 
-    private Function<EntityBuildableRollingStock, float[][]> initHeightmap() {
+    private Function<EntityBuildableRollingStock, HeightMap> initHeightmap() {
         String key = String.format(
                 "%s-%s-%s-%s-%s-%s",
                 model.hash, frontBounds, rearBounds, widthBounds, heightBounds, renderComponents.size());
@@ -732,60 +762,89 @@ public abstract class EntityRollingStockDefinition {
             });
             cache.close();
 
+            Map<BitSet, HeightMap> heightMaps = new ConcurrentHashMap<>();
             return (stock) -> {
-                try {
-                    float[] raw = data.get().floats();
-                    TagCompound tc = new TagCompound(meta.get().bytes());
-
-                    int xRes = tc.getInteger("xRes");
-                    int zRes = tc.getInteger("zRes");
-                    List<String> componentKeys = tc.getList("components", v -> v.getString("key"));
+                DecodedHeightMap decoded = decodeHeightMap(data, meta);
 
-                    float[][] heightMap = new float[xRes][zRes];
-
-                    List<ModelComponentType> availComponents = new ArrayList<>();
-                    for (ItemComponentType item : stock.getItemComponents()) {
-                        availComponents.addAll(item.render);
-                    }
+                List<ModelComponentType> availComponents = new ArrayList<>();
+                for (ItemComponentType item : stock.getItemComponents()) {
+                    availComponents.addAll(item.render);
+                }
 
-                    for (List<ModelComponent> rcl : this.renderComponents.values()) {
-                        for (ModelComponent rc : rcl) {
-                            if (!rc.type.collisionsEnabled) {
-                                continue;
-                            }
+                // Which of the decoded components this stock has, shared by all stock with the same components
+                BitSet present = new BitSet(decoded.componentKeys.size());
+                for (List<ModelComponent> rcl : this.renderComponents.values()) {
+                    for (ModelComponent rc : rcl) {
+                        if (!rc.type.collisionsEnabled) {
+                            continue;
+                        }
 
-                            if (availComponents.contains(rc.type)) {
-                                availComponents.remove(rc.type);
-                            } else if (rc.type == ModelComponentType.REMAINING && stock.isBuilt()) {
-                                //pass
-                            } else {
-                                continue;
-                            }
+                        if (availComponents.contains(rc.type)) {
+                            availComponents.remove(rc.type);
+                        } else if (rc.type == ModelComponentType.REMAINING && stock.isBuilt()) {
+                            //pass
+                        } else {
+                            continue;
+                        }
 
-                            int idx = componentKeys.indexOf(rc.key) * xRes * zRes;
-                            if (idx < 0) {
-                                // Code changed, we should probably invalidate this cache key...
-                                continue;
-                            }
-                            for (int x = 0; x < xRes; x++) {
-                                for (int z = 0; z < zRes; z++) {
-                                    heightMap[x][z] = Math.max(heightMap[x][z], raw[idx + x * zRes + z]);
-                                }
-                            }
+                        int index = decoded.componentKeys.indexOf(rc.key);
+                        if (index < 0) {
+                            // Code changed, we should probably invalidate this cache key...
+                            continue;
                         }
+                        present.set(index);
                     }
-
-                    return heightMap;
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
                 }
+
+                return heightMaps.computeIfAbsent(present, key -> {
+                    int size = decoded.xRes * decoded.zRes;
+                    float[] heightMap = new float[size];
+                    for (int component = key.nextSetBit(0); component >= 0; component = key.nextSetBit(component + 1)) {
+                        int idx = component * size;
+                        for (int i = 0; i < size; i++) {
+                            heightMap[i] = Math.max(heightMap[i], decoded.raw[idx + i]);
+                        }
+                    }
+                    return new HeightMap(decoded.xRes, decoded.zRes, heightMap);
+                });
             };
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public float[][] createHeightMap(EntityBuildableRollingStock stock) {
+    private static class DecodedHeightMap {
+        final int xRes;
+        final int zRes;
+        final List<String> componentKeys;
+        final float[] raw;
+
+        DecodedHeightMap(int xRes, int zRes, List<String> componentKeys, float[] raw) {
+            this.xRes = xRes;
+            this.zRes = zRes;
+            this.componentKeys = componentKeys;
+            this.raw = raw;
+        }
+    }
+
+    private synchronized DecodedHeightMap decodeHeightMap(Supplier<GenericByteBuffer> data, Supplier<GenericByteBuffer> meta) {
+        if (decodedHeightMap == null) {
+            try {
+                TagCompound tc = new TagCompound(meta.get().bytes());
+                decodedHeightMap = new DecodedHeightMap(
+                        tc.getInteger("xRes"),
+                        tc.getInteger("zRes"),
+                        tc.getList("components", v -> v.getString("key")),
+                        data.get().floats()
+                );
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return decodedHeightMap;
+    }
+
+    public HeightMap createHeightMap(EntityBuildableRollingStock stock) {
         return heightmap.apply(stock);
     }
 
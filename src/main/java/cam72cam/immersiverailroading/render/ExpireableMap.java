@@ -1,93 +1,160 @@
 package cam72cam.immersiverailroading.render;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Concurrent cache where entries expire after lifespan() seconds without use (or since insertion if not sliding) and
+ * the least recently used entries are evicted once there are more than maxSize() of them.
+ *
+ * Expiry is amortized: at most one thread sweeps the map at a time, at most once per second.
+ */
 public class ExpireableMap<K,V> {
-	
+
 	public int lifespan() {
 		return 10;
 	}
 	public boolean sliding() {
 		return true;
 	}
-	
+	public int maxSize() {
+		return Integer.MAX_VALUE;
+	}
+
 	public void onRemove(K key, V value) {
-		
+
+	}
+
+	private static long timeMs() {
+		return System.nanoTime() / 1000000L;
 	}
-	
-	private static long timeS() {
-		return System.currentTimeMillis() / 1000L;
+
+	private static class Entry<V> {
+		private final V value;
+		private volatile long lastUsedMs;
+
+		private Entry(V value, long lastUsedMs) {
+			this.value = value;
+			this.lastUsedMs = lastUsedMs;
+		}
 	}
-	
-	private Map<K, V> map = new HashMap<K, V>();
-	private Map<K, Long> mapUsage = new HashMap<K, Long>();
-	private long lastTime = timeS();
-	
+
+	private final Map<K, Entry<V>> map = new ConcurrentHashMap<>();
+	private final AtomicLong nextSweepMs = new AtomicLong(timeMs());
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
 	public V get(K key) {
-		synchronized(this) {
-			if (lastTime + lifespan() < timeS()) {
-				// clear unused
-				Set<K> ks = new HashSet<K>();
-				ks.addAll(map.keySet());
-				for (K dk : ks) {
-					if (dk != key && mapUsage.get(dk) + lifespan() < timeS()) {
-						onRemove(dk, map.get(dk));
-						map.remove(dk);
-						mapUsage.remove(dk);
-					}
-				}
-				lastTime = timeS();
-			}
-			
-			
-			if (map.containsKey(key)) {
-				if (sliding()) {
-					mapUsage.put(key, timeS());
-				}
-				return map.get(key);
-			}
+		long now = timeMs();
+		expire(key, now);
+
+		Entry<V> entry = map.get(key);
+		if (entry == null) {
+			misses.increment();
 			return null;
 		}
+		hits.increment();
+		if (sliding()) {
+			entry.lastUsedMs = now;
+		}
+		return entry.value;
 	}
 
 	public void put(K key, V displayList) {
-		synchronized(this) {
-			if (displayList == null) {
-				remove(key);
-			} else {
-				mapUsage.put(key, timeS());
-				map.put(key, displayList);
+		if (displayList == null) {
+			remove(key);
+		} else {
+			map.put(key, new Entry<>(displayList, timeMs()));
+			if (map.size() > maxSize()) {
+				evictOverflow(key);
 			}
 		}
 	}
 
 	public void remove(K key) {
-		synchronized(this) {
-			if(map.containsKey(key)) {
-				onRemove(key, map.get(key));
-				map.remove(key);
-				mapUsage.remove(key);
-			}
+		Entry<V> entry = map.remove(key);
+		if (entry != null) {
+			onRemove(key, entry.value);
 		}
 	}
 
 	public Collection<V> values() {
-		synchronized(this) {
-			if (lastTime + lifespan() < timeS()) {
-				// clear unused
-				Set<K> ks = new HashSet<K>();
-				ks.addAll(map.keySet());
-				for (K dk : ks) {
-					if (mapUsage.get(dk) + lifespan() < timeS()) {
-						onRemove(dk, map.get(dk));
-						map.remove(dk);
-						mapUsage.remove(dk);
-					}
-				}
-				lastTime = timeS();
+		expire(null, timeMs());
+
+		List<V> values = new ArrayList<>(map.size());
+		for (Entry<V> entry : map.values()) {
+			values.add(entry.value);
+		}
+		return values;
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s entries, %s hits, %s misses, %s evictions", size(), getHits(), getMisses(), getEvictions());
+	}
+
+	private boolean evict(K key, Entry<V> entry) {
+		// Only the thread that actually removes the entry gets to clean it up
+		if (map.remove(key, entry)) {
+			evictions.increment();
+			onRemove(key, entry.value);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param keep key being requested, which should not be expired out from under the caller
+	 */
+	private void expire(K keep, long now) {
+		long next = nextSweepMs.get();
+		if (now < next || !nextSweepMs.compareAndSet(next, now + 1000)) {
+			// Not time yet or someone else is already sweeping
+			return;
+		}
+
+		long lifespanMs = lifespan() * 1000L;
+		for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+			if (!Objects.equals(entry.getKey(), keep) && entry.getValue().lastUsedMs + lifespanMs < now) {
+				evict(entry.getKey(), entry.getValue());
 			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries down to 90% of maxSize, so this is not hit on every put
+	 */
+	private void evictOverflow(K keep) {
+		List<Map.Entry<K, Entry<V>>> entries = new ArrayList<>(map.entrySet());
+		entries.sort(Comparator.comparingLong(e -> e.getValue().lastUsedMs));
 
-			return map.values();
+		int toRemove = map.size() - (int) (maxSize() * 0.9);
+		for (Map.Entry<K, Entry<V>> entry : entries) {
+			if (toRemove <= 0) {
+				break;
+			}
+			if (!Objects.equals(entry.getKey(), keep) && evict(entry.getKey(), entry.getValue())) {
+				toRemove--;
+			}
 		}
 	}
 }
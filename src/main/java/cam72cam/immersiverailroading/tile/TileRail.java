@@ -10,6 +10,7 @@ import cam72cam.immersiverailroading.registry.DefinitionManager;
 import cam72cam.immersiverailroading.track.TrackBase;
 import cam72cam.immersiverailroading.util.MathUtil;
 import cam72cam.immersiverailroading.util.RailInfo;
+import cam72cam.immersiverailroading.util.SwitchUtil;
 import cam72cam.mod.entity.boundingbox.IBoundingBox;
 import cam72cam.mod.item.ItemStack;
 import cam72cam.mod.math.Vec3d;
@@ -19,7 +20,9 @@ import cam72cam.mod.serialization.TagField;
 import cam72cam.mod.serialization.TagMapper;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class TileRail extends TileRailBase {
 	@TagField("info")
@@ -52,9 +55,42 @@ public class TileRail extends TileRailBase {
 		return 8*32;
 	}
 
+	// Only used when this is the turn leg of a switch, see SwitchUtil
+	private volatile SwitchUtil.Legs switchLegs;
+	private volatile Boolean switchPowered;
+
+	public SwitchUtil.Legs getSwitchLegs(TileRail parent) {
+		SwitchUtil.Legs legs = switchLegs;
+		if (legs == null || !legs.matches(this, parent)) {
+			legs = new SwitchUtil.Legs(this, parent);
+			switchLegs = legs;
+		}
+		return legs;
+	}
+
+	/**
+	 * Cached on the server until a neighbor changes (see TileRailBase.onNeighborChange)
+	 */
+	public boolean isSwitchPowered() {
+		if (getWorld().isClient) {
+			return SwitchUtil.isRailPowered(this);
+		}
+		Boolean powered = switchPowered;
+		if (powered == null) {
+			powered = SwitchUtil.isRailPowered(this);
+			switchPowered = powered;
+		}
+		return powered;
+	}
+
+	public void invalidateSwitchPowered() {
+		switchPowered = null;
+	}
+
 	public void setSwitchState(SwitchState state) {
 		if (state != info.switchState) {
 			info = info.with(b -> b.switchState = state);
+			info.requestTrackPath(getWorld());
 			this.markDirty();
 		}
 	}
@@ -86,10 +122,20 @@ public class TileRail extends TileRailBase {
 		this.tableIndex = dest;
 	}
 
+	private boolean trackPathRequested;
+
 	@Override
 	public void update() {
 		super.update();
 
+		if (!trackPathRequested && getWorld().isServer && info != null) {
+			// Build the movement path before any stock needs it
+			trackPathRequested = true;
+			if (info.settings.type != TrackItems.TURNTABLE && info.settings.type != TrackItems.CROSSING) {
+				info.requestTrackPath(getWorld());
+			}
+		}
+
 		if (getWorld().isServer && info != null && info.settings.type == TrackItems.TURNTABLE) {
 			int slotsPerCircle = Config.ConfigBalance.AnglePlacementSegmentation * 4;
 			float desiredPosition = (360f / slotsPerCircle) * tableIndex;
@@ -169,8 +215,24 @@ public class TileRail extends TileRailBase {
 		}
 	}
 
+	// Re-check support every 5 minutes even if no neighbor change was seen
+	private static final int supportSweepTicks = 20 * 60 * 5;
+
 	private List<TrackBase> tracks;
+	// Blocks directly below the tracks of this rail
+	private Set<Vec3i> supports;
+	private boolean supportChanged = true;
+	private long supportCheckedTick;
+
 	public double percentFloating() {
+		double floating = checkFloating();
+		return floating < 0 ? 0 : floating;
+	}
+
+	/**
+	 * @return -1 if it can't be determined right now (track not loaded or missing)
+	 */
+	private double checkFloating() {
 		int floating = 0;
 		int total = 0;
 
@@ -183,6 +245,12 @@ public class TileRail extends TileRailBase {
 			// This is just terrible
 			Vec3i offset = getPos().subtract(tracks.get(0).getPos());
 			tracks = (info.settings.type == TrackItems.SWITCH ? info.withSettings(b -> b.type = TrackItems.STRAIGHT) : info).getBuilder(getWorld(), new Vec3i(info.placementInfo.placementPosition).add(getPos().add(offset))).getTracksForFloating();
+
+			Set<Vec3i> below = new HashSet<>();
+			for (TrackBase track : tracks) {
+				below.add(track.getPos().down());
+			}
+			supports = below;
 		}
 
 
@@ -191,7 +259,7 @@ public class TileRail extends TileRailBase {
 			total++;
 
 			if (!getWorld().isBlockLoaded(tpos) || !((getWorld().isBlock(tpos, IRBlocks.BLOCK_RAIL) || getWorld().isBlock(tpos, IRBlocks.BLOCK_RAIL_GAG)))) {
-				return 0;
+				return -1;
 			}
 			if (!track.isDownSolid(false)) {
 				floating++;
@@ -200,6 +268,38 @@ public class TileRail extends TileRailBase {
 		return floating / (double)total;
 	}
 
+	/**
+	 * Called when a block next to one of the tracks of this rail changes
+	 */
+	public void onSupportChanged(Vec3i neighbor) {
+		if (supports == null || supports.contains(neighbor)) {
+			supportChanged = true;
+			blockUpdate = true;
+		}
+	}
+
+	/**
+	 * Only re-evaluated after one of the blocks supporting this rail changed, with a slow sweep to catch anything
+	 * missed (the parent check this is called from is already spread across ticks)
+	 * @return true if too much of the rail is not supported
+	 */
+	public boolean isFloating() {
+		long tick = getWorld().getTicks();
+		if (!supportChanged && tick - supportCheckedTick < supportSweepTicks) {
+			return false;
+		}
+
+		double floating = checkFloating();
+		if (floating < 0) {
+			// Try again on the next parent check
+			supportChanged = true;
+			return false;
+		}
+		supportChanged = false;
+		supportCheckedTick = tick;
+		return floating > Config.ConfigBalance.trackFloatingPercent;
+	}
+
 	public void markAllDirty() {
 		if (info.settings == null) {
 			return;
@@ -1,7 +1,6 @@
 package cam72cam.immersiverailroading.tile;
 
 import cam72cam.immersiverailroading.Config;
-import cam72cam.immersiverailroading.Config.ConfigBalance;
 import cam72cam.immersiverailroading.Config.ConfigDebug;
 import cam72cam.immersiverailroading.IRBlocks;
 import cam72cam.immersiverailroading.IRItems;
@@ -16,6 +15,7 @@ import cam72cam.immersiverailroading.model.part.Door;
 import cam72cam.immersiverailroading.physics.MovementTrack;
 import cam72cam.immersiverailroading.thirdparty.trackapi.BlockEntityTrackTickable;
 import cam72cam.immersiverailroading.util.*;
+import cam72cam.immersiverailroading.util.Housekeeping.Task;
 import cam72cam.mod.block.IRedstoneProvider;
 import cam72cam.mod.entity.Player;
 import cam72cam.mod.entity.boundingbox.IBoundingBox;
@@ -205,6 +205,7 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 	}
 	public void setParent(Vec3i pos) {
 		this.parent = pos.subtract(this.getPos());
+		MovementTrack.invalidateTrackCache();
 	}
 	
 	public boolean isFlexible() {
@@ -252,6 +253,7 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 				railHeight = bedHeight;
 			}
 		}
+		MovementTrack.invalidateTrackCache();
 	}
 	@Override
 	public void save(TagCompound nbt) {
@@ -270,6 +272,7 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 	}
 	public void setReplaced(TagCompound replaced) {
 		this.replaced = replaced;
+		MovementTrack.invalidateTrackCache();
 	}
 	public TagCompound getReplaced() {
 		return replaced;
@@ -526,7 +529,7 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 			}
 		}
 
-		if (ticksExisted > 5 && blockUpdate || (ticksExisted % (20 * 5) == 0 && ticksExisted > (20 * 20))) {
+		if (ticksExisted > 5 && blockUpdate || (ticksExisted > (20 * 20) && Housekeeping.isDue(getWorld(), Task.RAIL_PARENT_CHECK, getPos().hashCode()))) {
 			// Double check every 5 seconds that the master is not gone
 			// Wont fire on first due to incr above
 			blockUpdate = false;
@@ -546,8 +549,7 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 			}
 			
 			if (Config.ConfigDamage.requireSolidBlocks && this instanceof TileRail && getWorld().isBlock(getPos(), IRBlocks.BLOCK_RAIL)) {
-				double floating = ((TileRail)this).percentFloating();
-				if (floating > ConfigBalance.trackFloatingPercent) {
+				if (((TileRail)this).isFloating()) {
 					if (this.tryBreak(null)) {
 						getWorld().breakBlock(getPos());
 					}
@@ -560,14 +562,14 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 			return;
 		}
 
-		if (overhead != null && ticksExisted % 5 == 0) {
+		if (overhead != null && Housekeeping.isDue(getWorld(), Task.RAIL_OVERHEAD_CHECK, getPos().hashCode())) {
 			SimulationState state = overhead.getCurrentState();
 			if (state == null || !state.trackToUpdate.contains(getPos())) {
 				overhead = null;
 			}
 		}
 
-		if (this.ticksExisted % 20 == 0) {
+		if (Housekeeping.isDue(getWorld(), Task.RAIL_AUGMENT_UPDATE, getPos().hashCode())) {
 			switch (augment) {
 				case ITEM_LOADER:
 				case ITEM_UNLOADER:
@@ -867,6 +869,7 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 		}
 
 		breakParentIfExists();
+		MovementTrack.invalidateTrackCache();
 	}
 
 	@Override
@@ -976,12 +979,18 @@ public class TileRailBase extends BlockEntityTrackTickable implements IRedstoneP
 
 		TagCompound data = te.getReplaced();
 		while (true) {
+			TileRail supported = te == this && te instanceof TileRail ? (TileRail) te : te.getParentTile();
+			if (supported != null) {
+				supported.onSupportChanged(neighbor);
+			}
+
 			TileRail teParent = te.getParentTile();
 			if (teParent != null && teParent.getParentTile() != null) {
 				TileRail switchTile = te.getParentTile();
 				if (te instanceof TileRail) {
 					switchTile = (TileRail) te;
 				}
+				switchTile.invalidateSwitchPowered();
 				SwitchState state = SwitchUtil.getSwitchState(switchTile);
 				if (state != SwitchState.NONE) {
 					switchTile.setSwitchState(state);
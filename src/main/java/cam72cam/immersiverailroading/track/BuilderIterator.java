@@ -1,8 +1,6 @@
 package cam72cam.immersiverailroading.track;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 
 import cam72cam.immersiverailroading.Config;
@@ -16,13 +14,12 @@ import cam72cam.mod.serialization.TagCompound;
 import cam72cam.mod.serialization.TagSerializer;
 import cam72cam.mod.util.Facing;
 import cam72cam.mod.world.World;
-import org.apache.commons.lang3.tuple.Pair;
 
 import cam72cam.immersiverailroading.util.RailInfo;
 import cam72cam.immersiverailroading.util.VecUtil;
 
 public abstract class BuilderIterator extends BuilderBase implements IIterableTrack {
-	protected HashSet<Pair<Integer, Integer>> positions;
+	protected GagPositions positions;
 	
 	public BuilderIterator(RailInfo info, World world, Vec3i pos) {
 		this(info, world, pos, false);
@@ -33,11 +30,7 @@ public abstract class BuilderIterator extends BuilderBase implements IIterableTr
 	public BuilderIterator(RailInfo info, World world, Vec3i pos, boolean endOfTrack) {
 		super(info, world, pos);
 		
-		positions = new HashSet<>();
-		HashMap<Pair<Integer, Integer>, Float> bedHeights = new HashMap<>();
-		HashMap<Pair<Integer, Integer>, Float> railHeights = new HashMap<>();
-		HashMap<Pair<Integer, Integer>, Integer> yOffset = new HashMap<>();
-		HashSet<Pair<Integer, Integer>> flexPositions = new HashSet<>();
+		positions = new GagPositions();
 		
 		double horiz = info.settings.gauge.scale() * 1.1;
 		if (Config.ConfigDebug.oldNarrowWidth && info.settings.gauge.value() < 1) {
@@ -85,15 +78,9 @@ public abstract class BuilderIterator extends BuilderBase implements IIterableTr
 					relHeight += 1;
 				}
 
-				Pair<Integer, Integer> gag = Pair.of(posX, posZ);
-				if (!positions.contains(gag)) {
-					positions.add(gag);
-                    bedHeights.put(gag, (float)(height + Math.max(0, relHeight - 0.1)));
-                    railHeights.put(gag, (float) relHeight);
-					yOffset.put(gag, (int) (gagPos.y - relHeight));
-				}
+				int gag = positions.add(posX, posZ, (float)(height + Math.max(0, relHeight - 0.1)), (float) relHeight, (int) (gagPos.y - relHeight));
 				if (isFlex || Math.abs(q) > info.settings.gauge.value()) {
-					flexPositions.add(gag);
+					positions.setFlexible(gag);
 				}
 			}
 			if (!isFlex && endOfTrack) {
@@ -102,17 +89,18 @@ public abstract class BuilderIterator extends BuilderBase implements IIterableTr
 			}
 		}
 
-		if (!yOffset.containsKey(Pair.of(mainX, mainZ))) {
+		if (!positions.contains(mainX, mainZ)) {
 			// Try a few different offsets
 			for (Facing value : Facing.values()) {
-				if (yOffset.containsKey(Pair.of(mainX + value.getXMultiplier(), mainZ + value.getZMultiplier()))) {
+				if (positions.contains(mainX + value.getXMultiplier(), mainZ + value.getZMultiplier())) {
 					mainX += value.getXMultiplier();
 					mainZ += value .getZMultiplier();
 					break;
 				}
 			}
 		}
-		if (!yOffset.containsKey(Pair.of(mainX, mainZ))) {
+		int main = positions.indexOf(mainX, mainZ);
+		if (main < 0) {
 			// No luck, code is really borked now.  Throw an exception to help track this.
 			TagCompound debug = new TagCompound();
 			try {
@@ -123,24 +111,24 @@ public abstract class BuilderIterator extends BuilderBase implements IIterableTr
 			throw new RuntimeException("Invalid track builder " + debug.toString());
 		}
 
-		Vec3i mainPos = new Vec3i(mainX, yOffset.get(Pair.of(mainX, mainZ)), mainZ);
+		Vec3i mainPos = new Vec3i(mainX, positions.yOffset(main), mainZ);
 		this.setParentPos(mainPos);
-		TrackRail main = new TrackRail(this, mainPos	);
-		tracks.add(main);
-		main.setRailHeight(railHeights.get(Pair.of(mainX, mainZ)));
-		main.setBedHeight(bedHeights.get(Pair.of(mainX, mainZ)));
+		TrackRail mainRail = new TrackRail(this, mainPos	);
+		tracks.add(mainRail);
+		mainRail.setRailHeight(positions.railHeight(main));
+		mainRail.setBedHeight(positions.bedHeight(main));
 
-		for (Pair<Integer, Integer> pair : positions) {
-			if (pair.getLeft() == mainX && pair.getRight() == mainZ) {
+		for (int i = 0; i < positions.size(); i++) {
+			if (i == main) {
 				// Skip parent block
 				continue;
 			}
-			TrackBase tg = new TrackGag(this, new Vec3i(pair.getLeft(), yOffset.get(pair), pair.getRight()));
-			if (flexPositions.contains(pair)) {
+			TrackBase tg = new TrackGag(this, new Vec3i(positions.x(i), positions.yOffset(i), positions.z(i)));
+			if (positions.isFlexible(i)) {
 				tg.setFlexible();
 			}
-			tg.setRailHeight(railHeights.get(pair));
-			tg.setBedHeight(bedHeights.get(pair));
+			tg.setRailHeight(positions.railHeight(i));
+			tg.setBedHeight(positions.bedHeight(i));
 			tracks.add(tg);
 		}
 	}
@@ -6,7 +6,6 @@ import cam72cam.mod.item.ItemStack;
 import cam72cam.mod.math.Vec3d;
 import cam72cam.mod.math.Vec3i;
 import cam72cam.mod.world.World;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,10 +31,11 @@ public class BuilderSwitch extends BuilderBase implements IIterableTrack {
 			straightInfo = straightInfo.withSettings(b -> {
 				double maxOverlap = 0;
 
-				straightBuilder.positions.retainAll(turnBuilder.positions);
-
-				for (Pair<Integer, Integer> straight : straightBuilder.positions) {
-					maxOverlap = Math.max(maxOverlap, new Vec3d(straight.getKey(), 0, straight.getValue()).length());
+				GagPositions straight = straightBuilder.positions;
+				for (int i = 0; i < straight.size(); i++) {
+					if (turnBuilder.positions.contains(straight.x(i), straight.z(i))) {
+						maxOverlap = Math.max(maxOverlap, new Vec3d(straight.x(i), 0, straight.z(i)).length());
+					}
 				}
 
 				maxOverlap *= 1.2;
@@ -0,0 +1,118 @@
+package cam72cam.immersiverailroading.track;
+
+import java.util.Arrays;
+
+/**
+ * Gag positions (x, z) collected while probing a track path, with the heights from the first probe to hit each one.
+ *
+ * Open addressing on the packed (x, z) with the per position values in parallel arrays, so probing every 0.1 blocks
+ * along a long curve does not box anything.  Entries are kept in insertion order and addressed by index.
+ */
+public class GagPositions {
+	// slot -> entry index + 1, 0 is empty
+	private int[] table = new int[64];
+	private long[] keys = new long[32];
+	private float[] bedHeights = new float[32];
+	private float[] railHeights = new float[32];
+	private int[] yOffsets = new int[32];
+	private boolean[] flexible = new boolean[32];
+	private int size;
+
+	private static long key(int x, int z) {
+		return ((long) x << 32) | (z & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int slot(long key) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != 0 && keys[table[slot] - 1] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return index of the position, or -1 if it has not been added
+	 */
+	public int indexOf(int x, int z) {
+		return table[slot(key(x, z))] - 1;
+	}
+
+	public boolean contains(int x, int z) {
+		return indexOf(x, z) >= 0;
+	}
+
+	/**
+	 * Adds the position if it is new, the values of an existing position are kept
+	 * @return index of the position
+	 */
+	public int add(int x, int z, float bedHeight, float railHeight, int yOffset) {
+		long key = key(x, z);
+		int slot = slot(key);
+		if (table[slot] != 0) {
+			return table[slot] - 1;
+		}
+
+		if (size == keys.length) {
+			int capacity = size * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			bedHeights = Arrays.copyOf(bedHeights, capacity);
+			railHeights = Arrays.copyOf(railHeights, capacity);
+			yOffsets = Arrays.copyOf(yOffsets, capacity);
+			flexible = Arrays.copyOf(flexible, capacity);
+		}
+		int index = size++;
+		keys[index] = key;
+		bedHeights[index] = bedHeight;
+		railHeights[index] = railHeight;
+		yOffsets[index] = yOffset;
+
+		if (size * 2 > table.length) {
+			// Keep the load factor under 1/2
+			table = new int[table.length * 2];
+			for (int i = 0; i < size; i++) {
+				table[slot(keys[i])] = i + 1;
+			}
+		} else {
+			table[slot] = index + 1;
+		}
+		return index;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int x(int index) {
+		return (int) (keys[index] >> 32);
+	}
+
+	public int z(int index) {
+		return (int) keys[index];
+	}
+
+	public float bedHeight(int index) {
+		return bedHeights[index];
+	}
+
+	public float railHeight(int index) {
+		return railHeights[index];
+	}
+
+	public int yOffset(int index) {
+		return yOffsets[index];
+	}
+
+	public boolean isFlexible(int index) {
+		return flexible[index];
+	}
+
+	public void setFlexible(int index) {
+		flexible[index] = true;
+	}
+}
@@ -0,0 +1,162 @@
+package cam72cam.immersiverailroading.track;
+
+import cam72cam.mod.math.Vec3d;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact copy of an IIterableTrack path (relative to the placement position) with the cumulative arc length at each
+ * point.  Built once per RailInfo and used to move stock along the track without walking the List<PosStep>.
+ */
+public class TrackPath {
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] yaw;
+    private final double[] distance;
+
+    public TrackPath(List<PosStep> steps) {
+        int size = steps.size();
+        x = new float[size];
+        y = new float[size];
+        z = new float[size];
+        yaw = new float[size];
+        distance = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            PosStep step = steps.get(i);
+            x[i] = (float) step.x;
+            y[i] = (float) step.y;
+            z[i] = (float) step.z;
+            yaw[i] = step.yaw;
+            if (i > 0) {
+                double dx = x[i] - x[i - 1];
+                double dy = y[i] - y[i - 1];
+                double dz = z[i] - z[i - 1];
+                distance[i] = distance[i - 1] + Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+        }
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public double length() {
+        return distance.length > 0 ? distance[distance.length - 1] : 0;
+    }
+
+    public Vec3d position(int index) {
+        return new Vec3d(x[index], y[index], z[index]);
+    }
+
+    public float yaw(int index) {
+        return yaw[index];
+    }
+
+    private double distanceToSquared(int index, Vec3d pos) {
+        double dx = pos.x - x[index];
+        double dy = pos.y - y[index];
+        double dz = pos.z - z[index];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Search by 1/3rds for the closest point, the distance is not strictly monotonic along curves
+     */
+    private int closestIndex(Vec3d pos) {
+        int left = 0;
+        double leftDistance = distanceToSquared(left, pos);
+        int right = size() - 1;
+        double rightDistance = distanceToSquared(right, pos);
+        while (right - left > 1) {
+            if (leftDistance > rightDistance) {
+                left = (int) Math.ceil(left + (right - left) / 3f);
+                leftDistance = distanceToSquared(left, pos);
+            } else {
+                right = (int) Math.floor(right + (left - right) / 3f);
+                rightDistance = distanceToSquared(right, pos);
+            }
+        }
+        return leftDistance < rightDistance ? left : right;
+    }
+
+    /**
+     * @return distance to the closest point of the path, same search as IIterableTrack.offsetFromTrack
+     */
+    public double offsetFrom(Vec3d pos) {
+        return Math.sqrt(distanceToSquared(closestIndex(pos), pos));
+    }
+
+    /**
+     * Requires at least two points
+     * @return arc length of the point on the path closest to pos, may be outside of [0, length] past either end
+     */
+    public double project(Vec3d pos) {
+        int closest = closestIndex(pos);
+        int last = size() - 2;
+
+        double bestDistance = Double.MAX_VALUE;
+        double result = distance[closest];
+        for (int seg = Math.max(0, closest - 1); seg <= Math.min(closest, last); seg++) {
+            double dx = x[seg + 1] - x[seg];
+            double dy = y[seg + 1] - y[seg];
+            double dz = z[seg + 1] - z[seg];
+            double lengthSquared = dx * dx + dy * dy + dz * dz;
+            double t = 0;
+            if (lengthSquared > 0) {
+                t = ((pos.x - x[seg]) * dx + (pos.y - y[seg]) * dy + (pos.z - z[seg]) * dz) / lengthSquared;
+                // Only the end segments extend past the path
+                if (seg != 0) {
+                    t = Math.max(0, t);
+                }
+                if (seg != last) {
+                    t = Math.min(1, t);
+                }
+            }
+            double cx = x[seg] + dx * t - pos.x;
+            double cy = y[seg] + dy * t - pos.y;
+            double cz = z[seg] + dz * t - pos.z;
+            double offSquared = cx * cx + cy * cy + cz * cz;
+            if (offSquared < bestDistance) {
+                bestDistance = offSquared;
+                result = distance[seg] + t * (distance[seg + 1] - distance[seg]);
+            }
+        }
+        return result;
+    }
+
+    private int segmentAt(double arcLength) {
+        int index = Arrays.binarySearch(distance, arcLength);
+        if (index < 0) {
+            // Insertion point - 1
+            index = -index - 2;
+        }
+        return Math.max(0, Math.min(size() - 2, index));
+    }
+
+    /**
+     * Requires at least two points
+     * @return interpolated position at the given arc length, extended along the end segments when past either end
+     */
+    public Vec3d positionAt(double arcLength) {
+        int seg = segmentAt(arcLength);
+        double segLength = distance[seg + 1] - distance[seg];
+        double t = segLength > 0 ? (arcLength - distance[seg]) / segLength : 0;
+        return new Vec3d(
+                x[seg] + (x[seg + 1] - x[seg]) * t,
+                y[seg] + (y[seg + 1] - y[seg]) * t,
+                z[seg] + (z[seg + 1] - z[seg]) * t
+        );
+    }
+
+    /**
+     * Requires at least two points
+     * @return direction of increasing arc length at the given arc length (not normalized)
+     */
+    public Vec3d tangentAt(double arcLength) {
+        int seg = segmentAt(arcLength);
+        return new Vec3d(x[seg + 1] - x[seg], y[seg + 1] - y[seg], z[seg + 1] - z[seg]);
+    }
+}
@@ -0,0 +1,98 @@
+package cam72cam.immersiverailroading.track;
+
+import cam72cam.immersiverailroading.render.ExpireableMap;
+import cam72cam.immersiverailroading.util.RailInfo;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Builds movement paths off thread, shared between all rails with the same RailInfo.uniqueID
+ *
+ * Constructing a builder samples the whole path and hashes every gag position, which is far too slow to do on the
+ * server thread the first time a train rolls onto a freshly loaded rail.  Rails request their path when they are
+ * loaded so it is usually done by the time stock needs it.  A caller which needs a path that is still queued builds
+ * just that one itself (see buildNow) rather than waiting behind everything else loaded with the chunk.
+ */
+public class TrackPathCache {
+	private static final ExpireableMap<String, CompletableFuture<TrackPath>> paths = new ExpireableMap<String, CompletableFuture<TrackPath>>() {
+		@Override
+		public int lifespan() {
+			return 5 * 60;
+		}
+
+		@Override
+		public int maxSize() {
+			return 4096;
+		}
+	};
+
+	private static ExecutorService pool;
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+			pool = new ThreadPoolExecutor(threads, threads,
+					5L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(),
+					runnable -> {
+						Thread thread = new Thread(runnable);
+						thread.setName("IR-TrackPath");
+						thread.setDaemon(true);
+						return thread;
+					});
+			((ThreadPoolExecutor) pool).allowCoreThreadTimeOut(true);
+		}
+		return pool;
+	}
+
+	/**
+	 * Starts building the path for the given rail if nobody has asked for it yet
+	 * @param builder constructs the path, must not touch the world
+	 */
+	public static CompletableFuture<TrackPath> request(RailInfo info, Supplier<TrackPath> builder) {
+		// Deduplicate concurrent requests for the same path
+		synchronized (paths) {
+			CompletableFuture<TrackPath> future = paths.get(info.uniqueID);
+			if (future == null) {
+				CompletableFuture<TrackPath> queued = future = new CompletableFuture<>();
+				getPool().execute(() -> build(queued, builder));
+				paths.put(info.uniqueID, future);
+			}
+			return future;
+		}
+	}
+
+	private static void build(CompletableFuture<TrackPath> future, Supplier<TrackPath> builder) {
+		if (future.isDone()) {
+			// Already built by a caller which could not wait
+			return;
+		}
+		try {
+			future.complete(builder.get());
+		} catch (RuntimeException ex) {
+			future.completeExceptionally(ex);
+		}
+	}
+
+	/**
+	 * Builds a path which is still queued on the calling thread, jumping ahead of the rest of the queue
+	 * @return the future, now done
+	 */
+	public static CompletableFuture<TrackPath> buildNow(CompletableFuture<TrackPath> future, Supplier<TrackPath> builder) {
+		build(future, builder);
+		return future;
+	}
+
+	/**
+	 * Drops a path which failed to build so the next request tries again, instead of handing the failure to every rail
+	 * with the same uniqueID for the whole lifespan
+	 */
+	public static void invalidate(RailInfo info, CompletableFuture<TrackPath> future) {
+		synchronized (paths) {
+			if (paths.get(info.uniqueID) == future) {
+				paths.remove(info.uniqueID);
+			}
+		}
+	}
+}
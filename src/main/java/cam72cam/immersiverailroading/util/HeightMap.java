@@ -0,0 +1,48 @@
+package cam72cam.immersiverailroading.util;
+
+/**
+ * Immutable heightmap of a piece of stock, heights relative to the stock height.
+ *
+ * Stored as a single row-major array (x * zRes + z) and shared between all stock with the same definition and
+ * components.
+ */
+public class HeightMap {
+	private final int xRes;
+	private final int zRes;
+	private final float[] data;
+
+	/**
+	 * @param data row-major, takes ownership of the array
+	 */
+	public HeightMap(int xRes, int zRes, float[] data) {
+		this.xRes = xRes;
+		this.zRes = zRes;
+		this.data = data;
+	}
+
+	public int xRes() {
+		return xRes;
+	}
+
+	public int zRes() {
+		return zRes;
+	}
+
+	public float get(int x, int z) {
+		return data[x * zRes + z];
+	}
+
+	/**
+	 * @return max height in [minX, maxX) x [minZ, maxZ), 0 if empty
+	 */
+	public float max(int minX, int maxX, int minZ, int maxZ) {
+		float max = 0;
+		for (int x = minX; x < maxX; x++) {
+			int row = x * zRes;
+			for (int z = minZ; z < maxZ; z++) {
+				max = Math.max(max, data[row + z]);
+			}
+		}
+		return max;
+	}
+}
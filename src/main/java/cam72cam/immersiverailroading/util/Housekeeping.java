@@ -0,0 +1,121 @@
+package cam72cam.immersiverailroading.util;
+
+import cam72cam.immersiverailroading.Config.ConfigPerformance;
+import cam72cam.immersiverailroading.ImmersiveRailroading;
+import cam72cam.mod.world.World;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spreads periodic server side housekeeping across ticks
+ *
+ * Instead of everything loaded on the same tick running its "every N ticks" work together, each task is offset by a
+ * hash of its owner.  At most ConfigPerformance.housekeepingBudget tasks run per tick, tasks over budget are owed and
+ * run as soon as there is room on a later tick.
+ */
+public class Housekeeping {
+	public enum Task {
+		DEFINITION_CHECK(5),
+		ELECTRICAL_POWER(5),
+		COG_PROBE(20),
+		TENDER_FEED(20),
+		RAIL_PARENT_CHECK(20 * 5),
+		RAIL_AUGMENT_UPDATE(20),
+		RAIL_OVERHEAD_CHECK(5),
+		;
+
+		public final int period;
+
+		Task(int period) {
+			this.period = period;
+		}
+	}
+
+	// Owed tasks which were never asked for again (owner unloaded) are dropped after this long
+	private static final int maxDeferTicks = 20 * 60;
+	private static final Map<World, Housekeeping> schedulers = new HashMap<>();
+
+	private final World world;
+	// task/owner key -> tick it was originally due
+	private final Map<Long, Long> deferred = new HashMap<>();
+	private long currentTick = -1;
+	private int ran;
+
+	private long deferredTotal;
+	private long maxDelay;
+
+	private Housekeeping(World world) {
+		this.world = world;
+	}
+
+	public static Housekeeping get(World world) {
+		return schedulers.computeIfAbsent(world, Housekeeping::new);
+	}
+
+	/**
+	 * @param owner stable hash of whatever owns the task (entity UUID, block position)
+	 * @return true if the task should run this tick
+	 */
+	public static boolean isDue(World world, Task task, int owner) {
+		return get(world).isDue(task, owner);
+	}
+
+	private boolean isDue(Task task, int owner) {
+		long tick = world.getTicks();
+		if (tick != currentTick) {
+			nextTick(tick);
+		}
+
+		long key = ((long) task.ordinal() << 32) | (owner & 0xFFFFFFFFL);
+		Long owedSince = deferred.get(key);
+		if (owedSince == null && Math.floorMod(tick + owner, task.period) != 0) {
+			return false;
+		}
+
+		int budget = ConfigPerformance.housekeepingBudget;
+		if (budget > 0 && ran >= budget) {
+			if (owedSince == null) {
+				deferred.put(key, tick);
+				deferredTotal++;
+			}
+			return false;
+		}
+
+		ran++;
+		if (owedSince != null) {
+			deferred.remove(key);
+			maxDelay = Math.max(maxDelay, tick - owedSince);
+		}
+		return true;
+	}
+
+	private void nextTick(long tick) {
+		currentTick = tick;
+		ran = 0;
+
+		if (tick % maxDeferTicks == 0) {
+			deferred.values().removeIf(since -> tick - since > maxDeferTicks);
+			if (deferredTotal > 0) {
+				ImmersiveRailroading.debug("Deferred %s", this);
+			}
+		}
+	}
+
+	public long getDeferredTotal() {
+		return deferredTotal;
+	}
+
+	public int getDeferredPending() {
+		return deferred.size();
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s housekeeping tasks, %s pending, max delay %s ticks", deferredTotal, getDeferredPending(), maxDelay);
+	}
+}
@@ -3,6 +3,7 @@ package cam72cam.immersiverailroading.util;
 import cam72cam.immersiverailroading.Config;
 import cam72cam.immersiverailroading.Config.ConfigDamage;
 import cam72cam.immersiverailroading.IRItems;
+import cam72cam.immersiverailroading.ImmersiveRailroading;
 import cam72cam.immersiverailroading.items.ItemRail;
 import cam72cam.immersiverailroading.items.nbt.RailSettings;
 import cam72cam.immersiverailroading.library.*;
@@ -18,6 +19,9 @@ import cam72cam.mod.math.Vec3i;
 import cam72cam.mod.world.World;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -161,7 +165,13 @@ public class RailInfo {
 	}
 
 
-	public ExpireableMap<Vec3i, BuilderBase> builders = new ExpireableMap<>();
+	public ExpireableMap<Vec3i, BuilderBase> builders = new ExpireableMap<Vec3i, BuilderBase>() {
+		@Override
+		public int maxSize() {
+			// Usually only ZERO, plus a handful of positions while previewing/placing
+			return 16;
+		}
+	};
 	public BuilderBase getBuilder(World world, Vec3i pos) {
 		BuilderBase builder = builders.get(pos);
 		if (builder == null) {
@@ -194,6 +204,48 @@ public class RailInfo {
 		return getBuilder(world, Vec3i.ZERO);
 	}
 
+	private volatile TrackPath trackPath;
+	private volatile boolean trackPathBuilt;
+	/**
+	 * Built off thread (see TrackPathCache), only built here if it was not done ahead of time
+	 * @return movement path relative to the placement position, or null if this track type is not iterable
+	 */
+	public TrackPath getTrackPath(World world) {
+		if (!trackPathBuilt) {
+			CompletableFuture<TrackPath> future = requestTrackPath(world);
+			if (!future.isDone()) {
+				// Only this rail, instead of waiting for every other rail queued ahead of it
+				TrackPathCache.buildNow(future, () -> buildTrackPath(world));
+			}
+			try {
+				trackPath = future.getNow(null);
+				trackPathBuilt = true;
+			} catch (CompletionException | CancellationException ex) {
+				ImmersiveRailroading.catching(ex);
+				// Try again next time
+				TrackPathCache.invalidate(this, future);
+				return null;
+			}
+		}
+		return trackPath;
+	}
+
+	/**
+	 * Starts building the movement path ahead of time
+	 */
+	public CompletableFuture<TrackPath> requestTrackPath(World world) {
+		return TrackPathCache.request(this, () -> buildTrackPath(world));
+	}
+
+	private TrackPath buildTrackPath(World world) {
+		// Throwaway builder, the one in builders is only created on the thread which needs it
+		BuilderBase builder = constructBuilder(world, Vec3i.ZERO);
+		if (builder instanceof IIterableTrack) {
+			return new TrackPath(((IIterableTrack) builder).getPath(0.25 * settings.gauge.scale()));
+		}
+		return null;
+	}
+
     private class MaterialManager {
 		private final Function<ItemStack, Boolean> material;
 		private final int count;
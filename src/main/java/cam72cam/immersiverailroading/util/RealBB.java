@@ -25,17 +25,17 @@ public class RealBB implements IBoundingBox {
 	private final double centerX;
 	private final double centerY;
 	private final double centerZ;
-	private final float[][] heightMap;
+	private final HeightMap heightMap;
 	
 	public RealBB(double front, double rear, double width, double height, float yaw) {
 		this(front, rear, width, height, yaw, null);		
 	}
 	
-	public RealBB(double front, double rear, double width, double height, float yaw, float[][] heightMap) {
+	public RealBB(double front, double rear, double width, double height, float yaw, HeightMap heightMap) {
 		this(front, rear, width, height, yaw, 0, 0, 0, heightMap);
 	}
 	
-	private RealBB(double front, double rear, double width, double height, float yaw, double centerX, double centerY, double centerZ, float[][] heightMap) {
+	private RealBB(double front, double rear, double width, double height, float yaw, double centerX, double centerY, double centerZ, HeightMap heightMap) {
 		this.front = front;
 		this.rear = rear;
 		this.width = width;
@@ -205,8 +205,8 @@ public class RealBB implements IBoundingBox {
 			return Pair.of(false, min.y);
 		}
 		if (this.heightMap != null && useHeightmap) {
-			int xRes = this.heightMap.length-1;
-			int zRes = this.heightMap[0].length-1;
+			int xRes = this.heightMap.xRes()-1;
+			int zRes = this.heightMap.zRes()-1;
 			
 			double length = this.front-this.rear;
 			
@@ -231,10 +231,8 @@ public class RealBB implements IBoundingBox {
 			Cx = (Cx/length*xRes);
 			Cz = (Cz/width*zRes);
 			
-			for (int x = (int) cx; x < (int)Cx; x++) {
-				for (int z = (int) cz; z < (int)Cz; z++) {
-					actualYMax = Math.max(actualYMax, this.centerY + this.height * this.heightMap[x][z]);
-				}
+			if ((int) cx < (int) Cx && (int) cz < (int) Cz) {
+				actualYMax = Math.max(actualYMax, this.centerY + this.height * this.heightMap.max((int) cx, (int) Cx, (int) cz, (int) Cz));
 			}
 
 			return Pair.of(actualYMin < max.y && actualYMax > min.y, actualYMax);
@@ -251,7 +249,7 @@ public class RealBB implements IBoundingBox {
 	public boolean contains(Vec3d vec) {
 		return this.intersectsAt(vec, vec, false).getLeft();
 	}
-	public RealBB withHeightMap(float[][] heightMap) {
+	public RealBB withHeightMap(HeightMap heightMap) {
 		return new RealBB(front, rear, width, height, yaw, centerX, centerY, centerZ, heightMap);
 	}
 }
@@ -6,6 +6,7 @@ import cam72cam.immersiverailroading.library.TrackItems;
 import cam72cam.immersiverailroading.tile.TileRail;
 import cam72cam.immersiverailroading.tile.TileRailBase;
 import cam72cam.immersiverailroading.track.IIterableTrack;
+import cam72cam.immersiverailroading.track.TrackPath;
 import cam72cam.mod.math.Vec3d;
 import cam72cam.mod.math.Vec3i;
 
@@ -32,17 +33,9 @@ public class SwitchUtil {
 		}
 
 		if (position != null) {
-			IIterableTrack switchBuilder = (IIterableTrack) parent.info.getBuilder(rail.getWorld());
-			IIterableTrack turnBuilder = (IIterableTrack) rail.info.getBuilder(rail.getWorld());
-			double isOnStraight = switchBuilder.offsetFromTrack(parent.info, parent.getPos(), position);
-			double isOnTurn = turnBuilder.offsetFromTrack(rail.info, rail.getPos(), position);
-
-			if (Math.abs(isOnStraight - isOnTurn) > rail.info.settings.gauge.scale() / 16) {
-				if (isOnStraight > isOnTurn) {
-					return SwitchState.NONE;
-				} else {
-					return SwitchState.STRAIGHT;
-				}
+			SwitchState leg = rail.getSwitchLegs(parent).legAt(position);
+			if (leg != null) {
+				return leg;
 			}
 		}
 
@@ -50,13 +43,63 @@ public class SwitchUtil {
 			return parent.info.switchForced;
 		}
 
-		if (isRailPowered(rail)) {
+		if (rail.isSwitchPowered()) {
 			return SwitchState.TURN;
 		}
 
 		return SwitchState.STRAIGHT;
 	}
 
+	/**
+	 * Paths of both legs of a switch, built once per switch and used to tell which leg a position is on
+	 */
+	public static class Legs {
+		private final RailInfo turnInfo;
+		private final RailInfo straightInfo;
+		private final Vec3d turnOrigin;
+		private final Vec3d straightOrigin;
+		private final TrackPath turn;
+		private final TrackPath straight;
+		private final double threshold;
+
+		public Legs(TileRail rail, TileRail parent) {
+			turnInfo = rail.info;
+			straightInfo = parent.info;
+			turnOrigin = rail.info.placementInfo.placementPosition.add(rail.getPos());
+			straightOrigin = parent.info.placementInfo.placementPosition.add(parent.getPos());
+			turn = new TrackPath(((IIterableTrack) rail.info.getBuilder(rail.getWorld())).getPath(rail.info.settings.gauge.scale() / 8));
+			straight = new TrackPath(((IIterableTrack) parent.info.getBuilder(rail.getWorld())).getPath(parent.info.settings.gauge.scale() / 8));
+			threshold = rail.info.settings.gauge.scale() / 16;
+		}
+
+		/**
+		 * @return false if either rail has been changed since these were built
+		 */
+		public boolean matches(TileRail rail, TileRail parent) {
+			return rail.info.placementInfo == turnInfo.placementInfo && rail.info.settings == turnInfo.settings &&
+					parent.info.placementInfo == straightInfo.placementInfo && parent.info.settings == straightInfo.settings;
+		}
+
+		private static double offset(TrackPath path, Vec3d origin, Vec3d position) {
+			Vec3d relative = position.subtract(origin);
+			relative = relative.add(0, -(relative.y % 1), 0);
+			return path.offsetFrom(relative);
+		}
+
+		/**
+		 * @return NONE if on the turn leg, STRAIGHT if on the straight leg, null if it's too close to tell
+		 */
+		public SwitchState legAt(Vec3d position) {
+			double isOnStraight = offset(straight, straightOrigin, position);
+			double isOnTurn = offset(turn, turnOrigin, position);
+
+			if (Math.abs(isOnStraight - isOnTurn) > threshold) {
+				return isOnStraight > isOnTurn ? SwitchState.NONE : SwitchState.STRAIGHT;
+			}
+			return null;
+		}
+	}
+
 	public static boolean isRailPowered(TileRail rail) {
 		Vec3d redstoneOrigin = rail.info.placementInfo.placementPosition.add(rail.getPos());
 		double horiz = rail.info.settings.gauge.scale() * 1.1;